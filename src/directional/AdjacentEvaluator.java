@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+/**
+ * Evaluator for landscapes with adjacent epistasis. Locus i reads the K+1 genome bits starting at
+ * (i - K/2 + N) % N, wrapping around the genome, so its gene index is a window of the genome rotated right by the
+ * start of the window. For N &lt;= 32 the genome is duplicated into a 2N-bit word once per evaluation, and each
+ * window is then a single shift and mask. Fitness values are identical to the general gather evaluation
+ * @author Sharad Singhal
+ */
+public class AdjacentEvaluator implements FitnessEvaluator {
+	/** Genome size in bits */
+	private final int N;
+	/** mask for the K+1 bits of a gene index */
+	private final int gene_mask;
+	/** first genome bit [N] read by each locus */
+	private final int start[];
+	/** number of gene indices for each locus, pow(2,K+1) */
+	private final int kMax;
+	/** locus-major fitness values [N * pow(2,K+1)], shared with the landscape */
+	private final float fitness_table[];
+
+	/**
+	 * Create an adjacent evaluator for a landscape
+	 * @param N - genome size. Must be &lt; 64
+	 * @param K - number of epistatic neighbors of each locus
+	 * @param fitness_table - locus-major fitness table [N * pow(2,K+1)] of the landscape
+	 */
+	AdjacentEvaluator(int N, int K, float fitness_table[]) {
+		if(N >= Long.SIZE || K + 1 >= Integer.SIZE) throw new RuntimeException("Adjacent evaluation requires N < "+Long.SIZE+" found "+N);
+		this.N = N;
+		this.fitness_table = fitness_table;
+		kMax = 1 << (K+1);
+		gene_mask = kMax - 1;
+		start = new int[N];
+		for(int i = 0; i < N; i++) start[i] = (i - K/2 + N) % N;
+		return;
+	}
+
+	/**
+	 * Check if an epistasis table holds adjacent epistasis
+	 * @param epistasis_locations - epistasis table [N][K+1]
+	 * @param N - genome size
+	 * @param K - number of epistatic neighbors of each locus
+	 * @return - true if locus i reads bits (i+j-K/2+N) % N for 0 &lt;= j &lt;= K
+	 */
+	static boolean isAdjacent(int epistasis_locations[][], int N, int K) {
+		for(int i = 0; i < N; i++){
+			for(int j = 0; j <= K; j++){
+				if(epistasis_locations[i][j] != (i+j-K/2+N) % N) return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.FitnessEvaluator#getFitness(long)
+	 */
+	@Override
+	public float getFitness(long value) {
+		float fitness = 0;
+		if(N <= Integer.SIZE){
+			// every window of the duplicated genome is a shift and mask
+			long doubled = value | (value << N);
+			for(int i = 0, row = 0; i < N; i++, row += kMax){
+				fitness += fitness_table[row + ((int) (doubled >>> start[i]) & gene_mask)];
+			}
+		} else {
+			for(int i = 0, row = 0; i < N; i++, row += kMax){
+				// rotate the N-bit genome right by the start of the window
+				int s = start[i];
+				fitness += fitness_table[row + ((int) ((value >>> s) | (value << (N - s))) & gene_mask)];
+			}
+		}
+		fitness /= N;
+		return fitness;
+	}
+
+	/**
+	 * Get the gene index read by a locus in a genome of up to 63 bits
+	 * @param i - locus in the genome
+	 * @param value - value of the genome
+	 * @return - gene index [0,pow(2,K+1)) into the fitness table
+	 */
+	public int getGene(int i, long value) {
+		int s = start[i];
+		return (int) ((value >>> s) | (value << (N - s))) & gene_mask;
+	}
+}
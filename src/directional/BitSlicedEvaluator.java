@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+/**
+ * Bit-sliced evaluator that computes the fitness of 64 genomes of up to 31 bits at a time. The genomes are transposed
+ * into N bit-planes (plane b holds bit b of each of the 64 genomes), the K+1 planes read by a locus are gathered with
+ * word-wide operations, and transposed back in 8x8 bit blocks to give the gene index of every lane. Only the table
+ * lookup is done per lane.
+ * <p>
+ * For an aligned block of 64 consecutive genomes, planes 0-5 are fixed lane patterns and the remaining planes are all
+ * zeros or all ones, so the per-lane gene index bits of each locus are precomputed once and combined with the bits
+ * the locus reads from the high part of the block.
+ * <p>
+ * Fitness values are summed in locus order for each genome, so they are identical to Landscape.getFitness()
+ * @author Sharad Singhal
+ */
+public class BitSlicedEvaluator {
+	/** Number of genomes evaluated in one pass */
+	public static final int LANES = Long.SIZE;
+	/** Number of low-order genome bits enumerated by the lanes of an aligned block */
+	private static final int LANE_BITS = 6;
+	/** Bit-planes for the low-order genome bits of the lanes in an aligned block */
+	private static final long LANE_PLANES[] = {
+			0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+			0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+	};
+	/** Genome size in bits */
+	private final int N;
+	/** number of epistatic bits read by each locus */
+	private final int K1;
+	/** table [N][K+1] of epistasis relationships, shared with the landscape */
+	private final int epistasis_locations[][];
+	/** number of gene indices for each locus, pow(2,K+1) */
+	private final int kMax;
+	/** locus-major fitness values [N * pow(2,K+1)], shared with the landscape */
+	private final float fitness_table[];
+	/** gene index bits [N][64] contributed by the low-order genome bits of each lane in an aligned block */
+	private final int lane_genes[][];
+	/** true for loci that read one of the low-order genome bits enumerated by the lanes */
+	private final boolean reads_lanes[];
+
+	/**
+	 * Create a bit-sliced evaluator for a landscape
+	 * @param N - genome size. Must be &lt;= Landscape.MAX_PEAK_N
+	 * @param epistasis_locations - epistasis table [N][K+1] of the landscape
+	 * @param fitness_table - locus-major fitness table [N * pow(2,K+1)] of the landscape
+	 */
+	BitSlicedEvaluator(int N, int epistasis_locations[][], float fitness_table[]) {
+		if(N > Landscape.MAX_PEAK_N) throw new RuntimeException("Bit-sliced evaluation requires N <= "+Landscape.MAX_PEAK_N+" found "+N);
+		this.N = N;
+		this.epistasis_locations = epistasis_locations;
+		this.fitness_table = fitness_table;
+		K1 = epistasis_locations[0].length;
+		kMax = 1 << K1;
+		lane_genes = new int[N][];
+		reads_lanes = new boolean[N];
+		long planes[] = new long[N];
+		for(int b = 0; b < Math.min(N, LANE_BITS); b++) planes[b] = LANE_PLANES[b];
+		for(int i = 0; i < N; i++){
+			for(int loc : epistasis_locations[i]) reads_lanes[i] |= loc < LANE_BITS;
+			lane_genes[i] = new int[LANES];
+			gatherGenes(planes, i, lane_genes[i]);
+		}
+		return;
+	}
+
+	/**
+	 * Evaluate an aligned block of 64 consecutive genomes
+	 * @param base - first genome in the block. Bits [0,6) must be zero
+	 * @param out - array receiving the fitness of genome (base+l) in out[offset+l], for 0 &lt;= l &lt; 64
+	 * @param offset - offset of the first fitness value in out
+	 */
+	public void evaluateBlock(int base, float out[], int offset) {
+		if(N < LANE_BITS || (base & (LANES - 1)) != 0 || (base >>> N) != 0) {
+			throw new RuntimeException("Illegal block "+base+" for N = "+N);
+		}
+		for(int l = 0; l < LANES; l++) out[offset + l] = 0;
+		for(int i = 0; i < N; i++){
+			// gene index bits read from the high part of the block are the same in all lanes
+			int high = 0;
+			int loc[] = epistasis_locations[i];
+			for(int j = 0; j < K1; j++){
+				high |= ((base >>> loc[j]) & 1) << j;
+			}
+			int row = i * kMax + high;
+			if(!reads_lanes[i]){
+				float f = fitness_table[row];
+				for(int l = 0; l < LANES; l++) out[offset + l] += f;
+			} else {
+				int genes[] = lane_genes[i];
+				for(int l = 0; l < LANES; l++) out[offset + l] += fitness_table[row | genes[l]];
+			}
+		}
+		for(int l = 0; l < LANES; l++) out[offset + l] /= N;
+		return;
+	}
+
+	/**
+	 * Evaluate up to 64 arbitrary genomes
+	 * @param genomes - genomes to evaluate
+	 * @param from - index of the first genome to evaluate
+	 * @param to - index one past the last genome to evaluate. At most 64 genomes are evaluated
+	 * @param out - array receiving the fitness of genomes[j] in out[j], for from &lt;= j &lt; to
+	 */
+	public void evaluate(int genomes[], int from, int to, float out[]) {
+		int lanes = to - from;
+		if(lanes < 0 || lanes > LANES) throw new RuntimeException("Illegal batch ["+from+","+to+")");
+		// transpose the genomes into bit-planes
+		long planes[] = new long[LANES];
+		for(int l = 0; l < lanes; l++) planes[l] = genomes[from + l];
+		transpose(planes);
+		int genes[] = new int[LANES];
+		for(int l = 0; l < lanes; l++) out[from + l] = 0;
+		for(int i = 0; i < N; i++){
+			gatherGenes(planes, i, genes);
+			int row = i * kMax;
+			for(int l = 0; l < lanes; l++) out[from + l] += fitness_table[row + genes[l]];
+		}
+		for(int l = 0; l < lanes; l++) out[from + l] /= N;
+		return;
+	}
+
+	/**
+	 * Gather the planes read by a locus, and transpose them into the gene index of each lane.
+	 * The K+1 gene planes are transposed in groups of 8, one 8x8 bit block per 8 lanes
+	 * @param planes - genome bit-planes [N]
+	 * @param i - locus in the genome
+	 * @param genes - array receiving the gene index [64] for each lane
+	 */
+	private void gatherGenes(long planes[], int i, int genes[]) {
+		int loc[] = epistasis_locations[i];
+		for(int l = 0; l < LANES; l++) genes[l] = 0;
+		for(int g = 0; g < K1; g += 8){
+			int rows = Math.min(8, K1 - g);
+			for(int c = 0; c < LANES; c += 8){
+				// byte r of the block holds lanes [c,c+8) of gene plane g+r
+				long block = 0;
+				for(int r = 0; r < rows; r++){
+					block |= ((planes[loc[g + r]] >>> c) & 0xFFL) << (r << 3);
+				}
+				block = transpose8(block);
+				// byte l of the transposed block holds gene bits [g,g+8) of lane c+l
+				for(int l = 0; l < 8; l++){
+					genes[c + l] |= (int) ((block >>> (l << 3)) & 0xFF) << g;
+				}
+			}
+		}
+		return;
+	}
+
+	/**
+	 * Transpose an 8x8 bit matrix held in a long. Row r is byte r, and column c is bit c of the byte
+	 * @param x - matrix to transpose
+	 * @return - transposed matrix
+	 */
+	static long transpose8(long x) {
+		long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+		x = x ^ t ^ (t << 7);
+		t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+		x = x ^ t ^ (t << 14);
+		t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+		x = x ^ t ^ (t << 28);
+		return x;
+	}
+
+	/**
+	 * Transpose a 64x64 bit matrix in place. Row r is a[r], and column c is bit c of the row
+	 * @param a - matrix [64] to transpose
+	 */
+	static void transpose(long a[]) {
+		long m = 0x00000000FFFFFFFFL;
+		for(int j = 32; j != 0; j >>>= 1, m ^= m << j){
+			// swap the upper right and lower left j x j blocks of each 2j x 2j block
+			for(int k = 0; k < LANES; k = ((k | j) + 1) & ~j){
+				long t = ((a[k] >>> j) ^ a[k | j]) & m;
+				a[k] ^= t << j;
+				a[k | j] ^= t;
+			}
+		}
+		return;
+	}
+}
@@ -41,6 +41,8 @@ public class Configuration {
 	public static final String creationDate = "2017-01-07";
 	/** Last modification date */
 	public static final String modifiedDate = "2017-04-15";
+	/** Largest N for which populations are tracked by PopulationCounter */
+	public static final int MAX_COUNTER_N = 30;
 	/** Banner for the program */
 	public static final String banner = "# N-K Model Simulation Version "+version+" dated "+creationDate+" last modified "+modifiedDate;
 	/** Copyright notice */
@@ -50,7 +52,7 @@ public class Configuration {
 	"\n# under certain conditions; See accompanying license for details.";
 	/** debug level */
 	private int debugLevel = 0;
-	/** Number of genes in genome <= 30 */
+	/** Number of genes in genome < 64 */
 	private int N = 10;
 	/** Number of epistasis locations */
 	private int K = 5;
@@ -96,6 +98,16 @@ public class Configuration {
 	private float maxFit = 0.0F;
 	/** flag to indicate if population traces should be written */
 	private boolean tracePop = false;
+	/** flag to indicate if offspring fitness is evaluated incrementally from the parent */
+	private boolean incremental = false;
+	/** flag to indicate if landscapes are materialized into dense fitness tables */
+	private boolean dense = false;
+	/** flag to indicate if landscapes are evaluated with generated code */
+	private boolean codegen = false;
+	/** flag to indicate if the population is held sparsely, by the genomes present */
+	private boolean sparse = false;
+	/** engine used to choose the number of replicating individuals of each genome */
+	private Engine engine = Engine.INDIVIDUAL;
 	
 	/** Options from the command line or options file */
 	private HashMap<String,String> options = new HashMap<String,String>();
@@ -127,12 +139,14 @@ public class Configuration {
 			
 		// now handle the remaining options
 		if(options.containsKey("d")) debugLevel = Integer.parseInt(options.get("d"));	
-		// note that we are currently limiting the simulation to N < 32
+		// Populations with N > MAX_COUNTER_N are held sparsely, and those with N >= 64 as multi-word genomes
 		if(options.containsKey("n")){
 			N = Integer.parseInt(options.get("n"));
-			if(N >= Integer.SIZE) throw new RuntimeException("N must be < "+Integer.SIZE+" found "+N);
+			if(N < 1 || N > Landscape.MAX_N) throw new RuntimeException("N must be 0 < N <= "+Landscape.MAX_N+" found "+N);
 			maxGenomes = (int)(Math.pow(2, N));
 		}
+		if(options.containsKey("sparse")) sparse = Boolean.parseBoolean(options.get("sparse"));
+		if(N > MAX_COUNTER_N) sparse = true;
 		if(options.containsKey("k")) K = Integer.parseInt(options.get("k"));
 		if(K >= N) throw new RuntimeException("K must be < "+N+" found "+K);
 		if(options.containsKey("f")) populationFile = options.get("f");
@@ -142,6 +156,7 @@ public class Configuration {
 		if(options.containsKey("v")) progress = Integer.parseInt(options.get("v"));
 		if(options.containsKey("e")) epistasis = Epistasis.valueOf(options.get("e").toUpperCase());
 		if(options.containsKey("m")) mutationStrategy = MutationStrategy.valueOf(options.get("m").toUpperCase());
+		if(options.containsKey("engine")) engine = Engine.valueOf(options.get("engine").toUpperCase());
 		if(options.containsKey("o")) outputFile = options.get("o");
 		if(options.containsKey("r")) mutation_probability = Float.parseFloat(options.get("r"));
 		if(mutation_probability <= 0. || mutation_probability >= 1.){
@@ -160,9 +175,25 @@ public class Configuration {
 		}
 		if(options.containsKey("rho")) rho = Float.parseFloat(options.get("rho"));
 		if(options.containsKey("tracepop")) tracePop = Boolean.parseBoolean(options.get("tracepop"));
+		if(options.containsKey("incremental")) incremental = Boolean.parseBoolean(options.get("incremental"));
+		if(options.containsKey("dense")) dense = Boolean.parseBoolean(options.get("dense"));
+		if(options.containsKey("codegen")) codegen = Boolean.parseBoolean(options.get("codegen"));
+		if(options.containsKey("threads")) Landscape.setThreads(Integer.parseInt(options.get("threads")));
+		if(options.containsKey("peakmemory")) Landscape.setPeakMemory(Long.parseLong(options.get("peakmemory")) << 20);
+		if(options.containsKey("streams")) Landscape.setStreamGeneration(Boolean.parseBoolean(options.get("streams")));
+		if(options.containsKey("virtual")) Landscape.setVirtualTables(Boolean.parseBoolean(options.get("virtual")),
+				options.containsKey("vcache") ? Integer.parseInt(options.get("vcache")) : 0);
+		if(options.containsKey("quantize")) Landscape.setQuantizedTables(Boolean.parseBoolean(options.get("quantize")));
+		if(options.containsKey("cache")) LandscapeRegistry.setCacheDirectory(options.get("cache"));
+		if(Landscape.isVirtualTables() && (landscapeFile != null || options.containsKey("a"))){
+			throw new RuntimeException("Virtual landscapes are computed from the seed, and cannot be read from landscape files (-l, -a)");
+		}
+		if(dense && N > Landscape.MAX_DENSE_N) throw new RuntimeException("Dense landscapes require N <= "+Landscape.MAX_DENSE_N+" found "+N);
 		
-		// generate the replication landscape
-		landscape = new Landscape(this);
+		// generate the replication landscape, or reuse it if it has already been generated
+		landscape = LandscapeRegistry.getLandscape(getN(), getK(), getEpistasis(), seed, landscapeFile);
+		if(dense) landscape.materialize(landscapeFile != null ? landscapeFile+Landscape.DENSE_SUFFIX : null);
+		if(codegen) landscape.compileEvaluator();
 		// ensure that we have a default cutoff value
 		if(cutoffs.isEmpty()) cutoffs.add((float) 0.5);
 		
@@ -178,8 +209,10 @@ public class Configuration {
 		if(!shocks.isEmpty()){
 			doShock = true;
 			// if we are given a correlation coefficient, generate a correlated landscape, else generate a random landscape
-			shockLandscape = options.containsKey("rho") ? new Landscape(landscape,rho,sseed,options.get("a")) 
-					: new Landscape(getN(),getK(),getEpistasis(),sseed,options.get("a"),true);
+			shockLandscape = options.containsKey("rho") ? LandscapeRegistry.getCorrelatedLandscape(landscape,rho,sseed,options.get("a")) 
+					: LandscapeRegistry.getLandscape(getN(),getK(),getEpistasis(),sseed,options.get("a"));
+			if(dense) shockLandscape.materialize(options.containsKey("a") ? options.get("a")+Landscape.DENSE_SUFFIX : null);
+			if(codegen) shockLandscape.compileEvaluator();
 		}
 		// if debug, print out the options
 		if(debugLevel > 2){
@@ -209,15 +242,28 @@ public class Configuration {
 		System.out.println("\t-i name   : input file name [null]");
 		System.out.println("\t-k value  : K value for (N,K) model [5]");
 		System.out.println("\t-l file   : read landscape from file instead of generating a random landscape [null]");
-		System.out.println("\t-n value  : N value for (N,K) model [10]");
+		System.out.println("\t-n value  : N value for (N,K) model, N <= 65536 [10]");
 		System.out.println("\t-m value  : mutation strategy {replicate|single_random|mult_random} [single_random]");
 		System.out.println("\t-o name   : output file name [out.txt]");
+		System.out.println("\t-engine value  : draw replication and multi-random mutation per individual and bit, or in bulk from binomial and geometric distributions {individual|count} [individual]");
 		System.out.println("\t-p value  : initial population size [10]");
 		System.out.println("\t-r value  : probability of a bit switch in multi-random strategy [0.1]");
 		System.out.println("\t-s value  : starting random number seed [32767]");
 		System.out.println("\t-v value  : show simulation progress every value steps [10]");
 		System.out.println("\t-trace value  : write out a trace of the simulation {TSV|CSV|NONE} [NONE]");
 		System.out.println("\t-tracepop value  : write out intermediate populations during simulation {false|true} [false]");
+		System.out.println("\t-incremental value  : evaluate offspring fitness incrementally from the parent {false|true} [false]");
+		System.out.println("\t-dense value  : precompute the fitness of all genomes in each landscape (N <= 30) {false|true} [false]");
+		System.out.println("\t-codegen value  : evaluate each landscape with a class generated for its epistasis table (N < 64) {false|true} [false]");
+		System.out.println("\t-threads value  : number of threads used to locate peaks and precompute landscapes [available processors]");
+		System.out.println("\t-peakmemory value  : memory ceiling (MB) for locating peaks; larger searches trade time for memory [half the heap]");
+		System.out.println("\t-streams value  : generate landscapes from counter-based random streams, filled in parallel {false|true} [false]");
+		System.out.println("\t-virtual value  : compute fitness table entries on demand from the seed instead of holding the table (K < 30; not with -l or -a) {false|true} [false]");
+		System.out.println("\t-vcache value  : log2 of the number of fitness values cached by each virtual landscape, 0 or 16 to 26 [0]");
+		System.out.println("\t-quantize value  : hold fitness tables and genome fitness as 16-bit values (for values in [0,1), table values and evaluated fitness within "+String.format("%.1e", Landscape.MAX_QUANTIZATION_ERROR)+
+				", fitness held by the population within "+String.format("%.1e", 2 * Landscape.MAX_QUANTIZATION_ERROR)+") {false|true} [false]");
+		System.out.println("\t-cache dir  : directory holding generated landscapes and their peaks, reused by later runs [null]");
+		System.out.println("\t-sparse value  : hold the population by the genomes present rather than by genome space; always true for N > 30 {false|true} [false]");
 		System.out.println("\t-a file   : use landscape from file instead of generating a random landscape for shocks [null]");
 		System.out.println("\t-shocks {[Gen shock] ... } value : Do a shock selection after given generations [null]" );
 		System.out.println("\t-sseed value : random number generator seed for shocks [79]" );
@@ -377,6 +423,14 @@ public class Configuration {
 	public MutationStrategy getMutationStrategy() {
 		return mutationStrategy;
 	}
+	
+	/**
+	 * Get the engine used to choose the number of replicating individuals of each genome
+	 * @return - engine in use
+	 */
+	public Engine getEngine() {
+		return engine;
+	}
 
 	/**
 	 * Get the genome size N
@@ -486,6 +540,22 @@ public class Configuration {
 		return tracePop;
 	}
 	
+	/**
+	 * Check if the population should be held sparsely
+	 * @return - true if the population memory scales with the number of unique genomes present
+	 */
+	public boolean sparsePopulation() {
+		return sparse;
+	}
+	
+	/**
+	 * Check if offspring fitness should be evaluated incrementally from the parent fitness
+	 * @return - true if only the loci affected by mutated bits are re-evaluated
+	 */
+	public boolean incrementalFitness() {
+		return incremental;
+	}
+	
 	/* 
 	 * *********************************************
 	 *  Helper methods for the simulation
@@ -509,6 +579,32 @@ public class Configuration {
 		return random.nextInt(maxGenomes);
 	}
 	
+	/**
+	 * get the (randomized) value of a genome of up to 63 bits. For N &lt;= MAX_COUNTER_N, the same value is
+	 * returned as from getRandomGeneValue()
+	 * @return - value of the genome
+	 */
+	public long getRandomGenome() {
+		return N <= MAX_COUNTER_N ? random.nextInt(maxGenomes) : random.nextLong() & ((1L << N) - 1);
+	}
+	
+	/**
+	 * Set a multi-word genome to a random value
+	 * @param genome - genome to randomize
+	 */
+	public void getRandomGenome(Genome genome) {
+		genome.randomize(random);
+		return;
+	}
+	
+	/**
+	 * Check if genomes are too long to be held in a single long, and must be held as multi-word Genomes
+	 * @return - true if N &gt;= 64
+	 */
+	public boolean multiWordGenomes() {
+		return N >= Long.SIZE;
+	}
+	
 	/**
 	 * Get a random value
 	 * @return - next random value
@@ -517,6 +613,34 @@ public class Configuration {
 		return random.nextFloat();
 	}
 	
+	/**
+	 * Get the number of successes in n trials that each succeed with probability p
+	 * @param n - number of trials
+	 * @param p - probability of success of each trial
+	 * @return - random value drawn from Binomial(n, p)
+	 */
+	public int randomBinomial(int n, float p){
+		return Distributions.binomial(random, n, p);
+	}
+	
+	/**
+	 * Get the number of bits to skip before the next bit flipped by multi-random mutation
+	 * @return - random value drawn from the geometric distribution with the mutation probability. At most 2^30
+	 */
+	public int randomSkip(){
+		return Math.min(1 << 30, Distributions.geometric(random, mutation_probability));
+	}
+	
+	/**
+	 * Spread n trials uniformly at random over the outcomes [0,counts.length)
+	 * @param n - number of trials
+	 * @param counts - array receiving the number of trials with each outcome, drawn from a multinomial distribution
+	 */
+	public void randomMultinomial(int n, int counts[]){
+		Distributions.multinomial(random, n, counts);
+		return;
+	}
+	
 	/**
 	 * Get an output filename with the prefix prepended to it
 	 * @param prefix - prefix to use
@@ -547,7 +671,7 @@ public class Configuration {
 			}
 			break;
 		}
-		if(cutoff > landscape.getMaxPeak()){
+		if(landscape.getNumberOfPeaks() > 0 && cutoff > landscape.getMaxPeak()){
 			System.out.println("*Warning* - Cutoff "+cutoff+" at generation "+generation+" > maximum peak ("+landscape.getMaxPeak()+") in the landscape");
 		}
 		return cutoff;
@@ -568,7 +692,7 @@ public class Configuration {
 				break;
 			}
 		}
-		if(shock > shockLandscape.getMaxPeak()){
+		if(shockLandscape.getNumberOfPeaks() > 0 && shock > shockLandscape.getMaxPeak()){
 			System.out.println("*Warning* - Shock  "+shock+" at generation "+generation+" > maximum peak ("+shockLandscape.getMaxPeak()+") in the shock landscape");
 		}
 		return shock;
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.util.Random;
+
+/**
+ * Exact samplers for discrete distributions used by the count engine. Each sampler draws from a caller-supplied
+ * random number generator, so simulations remain reproducible from their seed
+ * @author Sharad Singhal
+ */
+public class Distributions {
+	/** Smallest n * min(p,1-p) for which binomial values are drawn with BTPE rather than by inversion */
+	private static final double BTPE_MIN_MEAN = 30;
+
+	/**
+	 * Draw a value from the binomial distribution Binomial(n, p), the number of successes in n independent trials
+	 * that each succeed with probability p. Small means are drawn by inversion, and large means with the BTPE
+	 * algorithm of Kachitvichyanukul and Schmeiser (1988), so the expected cost is O(1) for any n
+	 * @param random - random number generator to use
+	 * @param n - number of trials
+	 * @param p - probability of success of each trial
+	 * @return - number of successes [0,n]
+	 */
+	public static int binomial(Random random, int n, double p) {
+		if(n <= 0 || p <= 0) return 0;
+		if(p >= 1) return n;
+		double r = Math.min(p, 1 - p);
+		int y = n * r < BTPE_MIN_MEAN ? binomialInversion(random, n, r) : binomialBTPE(random, n, r);
+		return p > 0.5 ? n - y : y;
+	}
+
+	/**
+	 * Draw a value from the multinomial distribution of n trials over k equally likely outcomes, where k is the
+	 * length of counts[]. The counts are drawn in turn from the binomial distribution of the trials not yet assigned,
+	 * so the cost is O(k) for any n
+	 * @param random - random number generator to use
+	 * @param n - number of trials
+	 * @param counts - array receiving the number of trials with each outcome
+	 */
+	public static void multinomial(Random random, int n, int counts[]) {
+		int k = counts.length;
+		for(int j = 0; j < k; j++){
+			counts[j] = n > 0 && j < k - 1 ? binomial(random, n, 1.0 / (k - j)) : n;
+			n -= counts[j];
+		}
+		return;
+	}
+
+	/**
+	 * Draw a value from the geometric distribution, the number of failed trials before the first success when each
+	 * trial succeeds with probability p. The value is drawn by inversion with a single random number
+	 * @param random - random number generator to use
+	 * @param p - probability of success of each trial, 0 &lt; p &lt;= 1
+	 * @return - number of failures before the first success, capped at Integer.MAX_VALUE
+	 */
+	public static int geometric(Random random, double p) {
+		if(p >= 1) return 0;
+		// 1 - nextDouble() is in (0,1], so the logarithm is finite
+		return (int) Math.min(Integer.MAX_VALUE, Math.floor(Math.log(1 - random.nextDouble()) / Math.log1p(-p)));
+	}
+
+	/**
+	 * Draw a binomial value by inversion of the cumulative distribution
+	 * @param random - random number generator to use
+	 * @param n - number of trials
+	 * @param p - probability of success, &lt;= 0.5
+	 * @return - number of successes
+	 */
+	private static int binomialInversion(Random random, int n, double p) {
+		double q = 1 - p;
+		double qn = Math.exp(n * Math.log(q));
+		double np = n * p;
+		double bound = Math.min(n, np + 10 * Math.sqrt(np * q + 1));
+		int x = 0;
+		double px = qn;
+		double u = random.nextDouble();
+		while(u > px){
+			x++;
+			if(x > bound){
+				// the tail beyond the bound is negligible; restart to keep the walk short
+				x = 0;
+				px = qn;
+				u = random.nextDouble();
+			} else {
+				u -= px;
+				px = ((n - x + 1) * p * px) / (x * q);
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Draw a binomial value with the BTPE (triangle, parallelogram, exponential) acceptance-rejection algorithm
+	 * @param random - random number generator to use
+	 * @param n - number of trials
+	 * @param p - probability of success, &lt;= 0.5, with n * p &gt;= 30
+	 * @return - number of successes
+	 */
+	private static int binomialBTPE(Random random, int n, double p) {
+		// setup: the hat function is a triangle over the mode, parallelograms beside it, and exponential tails
+		double q = 1 - p;
+		double nrq = n * p * q;
+		double fm = n * p + p;
+		long m = (long) Math.floor(fm);
+		double p1 = Math.floor(2.195 * Math.sqrt(nrq) - 4.6 * q) + 0.5;
+		double xm = m + 0.5;
+		double xl = xm - p1;
+		double xr = xm + p1;
+		double c = 0.134 + 20.5 / (15.3 + m);
+		double a = (fm - xl) / (fm - xl * p);
+		double laml = a * (1 + a / 2);
+		a = (xr - fm) / (xr * q);
+		double lamr = a * (1 + a / 2);
+		double p2 = p1 * (1 + 2 * c);
+		double p3 = p2 + c / laml;
+		double p4 = p3 + c / lamr;
+		while(true){
+			double u = random.nextDouble() * p4;
+			double v = random.nextDouble();
+			long y;
+			if(u <= p1){
+				// triangular region: accept immediately
+				return (int) Math.floor(xm - p1 * v + u);
+			} else if(u <= p2){
+				// parallelogram region
+				double x = xl + (u - p1) / c;
+				v = v * c + 1 - Math.abs(m - x + 0.5) / p1;
+				if(v > 1) continue;
+				y = (long) Math.floor(x);
+			} else if(u <= p3){
+				// left exponential tail
+				y = (long) Math.floor(xl + Math.log(v) / laml);
+				if(y < 0) continue;
+				v = v * (u - p2) * laml;
+			} else {
+				// right exponential tail
+				y = (long) Math.floor(xr - Math.log(v) / lamr);
+				if(y > n) continue;
+				v = v * (u - p3) * lamr;
+			}
+			long k = Math.abs(y - m);
+			if(k <= 20 || k >= nrq / 2 - 1){
+				// evaluate the ratio f(y)/f(m) by recursion
+				double s = p / q;
+				a = s * (n + 1);
+				double f = 1;
+				if(m < y){
+					for(long i = m + 1; i <= y; i++) f *= a / i - s;
+				} else if(m > y){
+					for(long i = y + 1; i <= m; i++) f /= a / i - s;
+				}
+				if(v <= f) return (int) y;
+				continue;
+			}
+			// squeeze using upper and lower bounds on log(f(y))
+			double rho = (k / nrq) * ((k * (k / 3.0 + 0.625) + 0.1666666666666) / nrq + 0.5);
+			double t = -k * k / (2 * nrq);
+			double alv = Math.log(v);
+			if(alv < t - rho) return (int) y;
+			if(alv > t + rho) continue;
+			// final acceptance test, with Stirling's formula for the factorials
+			double x1 = y + 1;
+			double f1 = m + 1;
+			double z = n + 1 - m;
+			double w = n - y + 1;
+			double x2 = x1 * x1;
+			double f2 = f1 * f1;
+			double z2 = z * z;
+			double w2 = w * w;
+			double bound = xm * Math.log(f1 / x1) + (n - m + 0.5) * Math.log(z / w) + (y - m) * Math.log(w * p / (x1 * q))
+					+ stirling(f1, f2) + stirling(z, z2) + stirling(x1, x2) + stirling(w, w2);
+			if(alv <= bound) return (int) y;
+		}
+	}
+
+	/**
+	 * Correction term of Stirling's approximation to log(x!)
+	 * @param x - argument
+	 * @param x2 - square of the argument
+	 * @return - correction term
+	 */
+	private static double stirling(double x, double x2) {
+		return (13860. - (462. - (132. - (99. - 140. / x2) / x2) / x2) / x2) / x / 166320.;
+	}
+}
@@ -0,0 +1,388 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+
+/**
+ * Generates a FitnessEvaluator class specialized to the epistasis table of a landscape. The loop over the loci is
+ * fully unrolled, and every epistasis location is baked into the code as a constant shift, so each gene index is
+ * extracted with shifts and masks and no table indirection. Runs of consecutive epistasis locations are extracted
+ * with a single shift and mask, and the fitness values are read from the locus-major table of the landscape.
+ * The class is defined as a hidden class in this package.
+ * <p>
+ * The code is straight-line, so no stack map frames are needed. The loci are split across static methods of at
+ * most about 4000 bytes each, keeping every method well under the size limit for JIT compilation. Each method adds
+ * the contributions of its loci to the running sum in locus order, so the fitness values are identical to those of
+ * Landscape.getFitness()
+ * @author Sharad Singhal
+ */
+public class EvaluatorGenerator {
+	/** Internal name of the generated class */
+	private static final String CLASS_NAME = "directional/GeneratedEvaluator";
+	/** Approximate maximum number of bytecode bytes in a generated method */
+	private static final int MAX_METHOD_BYTES = 4000;
+	/** Descriptor of the methods that evaluate a part of the loci */
+	private static final String PART_DESCRIPTOR = "(JF[F)F";
+
+	/** constant pool being built */
+	private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	/** output stream over the constant pool */
+	private DataOutputStream poolOut = new DataOutputStream(pool);
+	/** index of constants already in the pool */
+	private HashMap<String,Integer> constants = new HashMap<String,Integer>();
+	/** number of constant pool slots in use (slot 0 is unused) */
+	private int poolSize = 1;
+
+	/**
+	 * Create a generator. Each generator builds one class
+	 */
+	private EvaluatorGenerator() {
+		return;
+	}
+
+	/**
+	 * Generate an evaluator for a landscape
+	 * @param N - genome size. Must be &lt; 64
+	 * @param epistasis_locations - epistasis table [N][K+1] of the landscape
+	 * @param fitness_table - locus-major fitness table [N * pow(2,K+1)] of the landscape. The generated code reads it directly
+	 * @return - generated evaluator
+	 */
+	static FitnessEvaluator generate(int N, int epistasis_locations[][], float fitness_table[]) {
+		if(N >= Long.SIZE) throw new RuntimeException("Generated evaluators require N < "+Long.SIZE+" found "+N);
+		int kMax = fitness_table.length / N;
+		try {
+			byte classBytes[] = new EvaluatorGenerator().generateClass(N, epistasis_locations, kMax);
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+			return (FitnessEvaluator) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, float[].class)).invoke(fitness_table);
+		} catch (Throwable e) {
+			throw new RuntimeException("Unable to generate evaluator: "+e.toString());
+		}
+	}
+
+	/**
+	 * Generate the class file for an evaluator
+	 * @param N - genome size
+	 * @param epistasis_locations - epistasis table [N][K+1]
+	 * @param kMax - number of gene indices for each locus
+	 * @return - class file bytes
+	 * @throws IOException - if the class cannot be written
+	 */
+	private byte[] generateClass(int N, int epistasis_locations[][], int kMax) throws IOException {
+		// generate the code for each locus, and split the loci into parts
+		ByteArrayOutputStream parts = new ByteArrayOutputStream();
+		DataOutputStream partsOut = new DataOutputStream(parts);
+		ByteArrayOutputStream code = new ByteArrayOutputStream();
+		int nParts = 0;
+		for(int i = 0; i < N; i++){
+			code.write(0x24);								// fload_2 (running sum)
+			code.write(0x2d);								// aload_3 (table)
+			pushInt(code, i * kMax);						// offset of the locus in the table
+			gene(code, epistasis_locations[i]);			// gene index of the locus
+			code.write(0x60);								// iadd
+			code.write(0x30);								// faload
+			code.write(0x62);								// fadd
+			code.write(0x45);								// fstore_2
+			if(code.size() >= MAX_METHOD_BYTES || i == N-1){
+				code.write(0x24);							// fload_2
+				code.write(0xae);							// freturn
+				writeMethod(partsOut, 0x000A, "part"+nParts, PART_DESCRIPTOR, 10, 4, code.toByteArray());
+				code.reset();
+				nParts++;
+			}
+		}
+		// constructor storing the table
+		int table = fieldref("t", "[F");
+		code.write(0x2a);									// aload_0
+		code.write(0xb7);									// invokespecial Object.<init>
+		writeShort(code, methodref("java/lang/Object", "<init>", "()V"));
+		code.write(0x2a);									// aload_0
+		code.write(0x2b);									// aload_1
+		code.write(0xb5);									// putfield t
+		writeShort(code, table);
+		code.write(0xb1);									// return
+		ByteArrayOutputStream methods = new ByteArrayOutputStream();
+		DataOutputStream methodsOut = new DataOutputStream(methods);
+		writeMethod(methodsOut, 0x0001, "<init>", "([F)V", 2, 2, code.toByteArray());
+		code.reset();
+		// getFitness calls each part in turn, then divides by N
+		code.write(0x2a);									// aload_0
+		code.write(0xb4);									// getfield t
+		writeShort(code, table);
+		code.write(0x4e);									// astore_3
+		code.write(0x0b);									// fconst_0
+		code.write(0x38);									// fstore 4
+		code.write(4);
+		for(int p = 0; p < nParts; p++){
+			code.write(0x1f);								// lload_1
+			code.write(0x17);								// fload 4
+			code.write(4);
+			code.write(0x2d);								// aload_3
+			code.write(0xb8);								// invokestatic part
+			writeShort(code, methodref(CLASS_NAME, "part"+p, PART_DESCRIPTOR));
+			code.write(0x38);								// fstore 4
+			code.write(4);
+		}
+		code.write(0x17);									// fload 4
+		code.write(4);
+		code.write(0x13);									// ldc_w (float) N
+		writeShort(code, floatConstant(N));
+		code.write(0x6e);									// fdiv
+		code.write(0xae);									// freturn
+		writeMethod(methodsOut, 0x0001, "getFitness", "(J)F", 5, 5, code.toByteArray());
+
+		// assemble the class file
+		int thisClass = classref(CLASS_NAME);
+		int superClass = classref("java/lang/Object");
+		int evaluator = classref("directional/FitnessEvaluator");
+		int fieldName = utf8("t");
+		int fieldType = utf8("[F");
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(classBytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);									// minor version
+		out.writeShort(61);									// major version (Java 17)
+		out.writeShort(poolSize);
+		out.write(pool.toByteArray());
+		out.writeShort(0x0031);								// ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(evaluator);
+		out.writeShort(1);									// field t
+		out.writeShort(0x0012);								// ACC_PRIVATE | ACC_FINAL
+		out.writeShort(fieldName);
+		out.writeShort(fieldType);
+		out.writeShort(0);
+		out.writeShort(nParts + 2);
+		out.write(methods.toByteArray());
+		out.write(parts.toByteArray());
+		out.writeShort(0);									// no class attributes
+		out.close();
+		return classBytes.toByteArray();
+	}
+
+	/**
+	 * Generate the code to compute the gene index of a locus from the genome in local 0. Runs of consecutive
+	 * epistasis locations are extracted with one shift and mask
+	 * @param code - code being generated
+	 * @param loc - epistasis locations [K+1] of the locus
+	 */
+	private void gene(ByteArrayOutputStream code, int loc[]) {
+		boolean first = true;
+		for(int j = 0; j < loc.length; ){
+			int run = 1;
+			while(j + run < loc.length && loc[j + run] == loc[j] + run) run++;
+			code.write(0x1e);								// lload_0
+			if(loc[j] != 0){
+				code.write(0x10);							// bipush shift
+				code.write(loc[j]);
+				code.write(0x7d);							// lushr
+			}
+			code.write(0x88);								// l2i
+			pushInt(code, run < Integer.SIZE ? (1 << run) - 1 : -1);
+			code.write(0x7e);								// iand
+			if(j != 0){
+				code.write(0x10);							// bipush j
+				code.write(j);
+				code.write(0x78);							// ishl
+			}
+			if(!first) code.write(0x80);					// ior
+			first = false;
+			j += run;
+		}
+		return;
+	}
+
+	/**
+	 * Write a method to the class file
+	 * @param out - stream receiving the method
+	 * @param access - access flags of the method
+	 * @param name - name of the method
+	 * @param descriptor - descriptor of the method
+	 * @param maxStack - maximum operand stack depth
+	 * @param maxLocals - number of local variable slots
+	 * @param code - bytecode of the method
+	 * @throws IOException - if the method cannot be written
+	 */
+	private void writeMethod(DataOutputStream out, int access, String name, String descriptor, int maxStack, int maxLocals, byte code[]) throws IOException {
+		out.writeShort(access);
+		out.writeShort(utf8(name));
+		out.writeShort(utf8(descriptor));
+		out.writeShort(1);
+		out.writeShort(utf8("Code"));
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);									// no exception table
+		out.writeShort(0);									// no code attributes
+		return;
+	}
+
+	/**
+	 * Generate the code to push an integer constant
+	 * @param code - code being generated
+	 * @param value - value to push
+	 */
+	private void pushInt(ByteArrayOutputStream code, int value) {
+		if(value >= -1 && value <= 5){
+			code.write(0x03 + value);						// iconst_<value>
+		} else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+			code.write(0x10);								// bipush
+			code.write(value);
+		} else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+			code.write(0x11);								// sipush
+			writeShort(code, value);
+		} else {
+			code.write(0x13);								// ldc_w
+			writeShort(code, intConstant(value));
+		}
+		return;
+	}
+
+	/**
+	 * Write a 16-bit value to generated code
+	 * @param code - code being generated
+	 * @param value - value to write
+	 */
+	private static void writeShort(ByteArrayOutputStream code, int value) {
+		code.write(value >>> 8);
+		code.write(value);
+		return;
+	}
+
+	/**
+	 * Get the constant pool index of a UTF8 constant, adding it if needed
+	 * @param value - string value
+	 * @return - constant pool index
+	 */
+	private int utf8(String value) {
+		return constant("U" + value, 1, () -> poolOut.writeUTF(value));
+	}
+
+	/**
+	 * Get the constant pool index of an integer constant, adding it if needed
+	 * @param value - integer value
+	 * @return - constant pool index
+	 */
+	private int intConstant(int value) {
+		return constant("I" + value, 3, () -> poolOut.writeInt(value));
+	}
+
+	/**
+	 * Get the constant pool index of a float constant, adding it if needed
+	 * @param value - float value
+	 * @return - constant pool index
+	 */
+	private int floatConstant(float value) {
+		return constant("F" + Float.floatToIntBits(value), 4, () -> poolOut.writeFloat(value));
+	}
+
+	/**
+	 * Get the constant pool index of a class reference, adding it if needed
+	 * @param name - internal name of the class
+	 * @return - constant pool index
+	 */
+	private int classref(String name) {
+		int nameIndex = utf8(name);
+		return constant("C" + name, 7, () -> poolOut.writeShort(nameIndex));
+	}
+
+	/**
+	 * Get the constant pool index of a name and type, adding it if needed
+	 * @param name - member name
+	 * @param descriptor - member descriptor
+	 * @return - constant pool index
+	 */
+	private int nameAndType(String name, String descriptor) {
+		int nameIndex = utf8(name);
+		int typeIndex = utf8(descriptor);
+		return constant("N" + name + " " + descriptor, 12, () -> {
+			poolOut.writeShort(nameIndex);
+			poolOut.writeShort(typeIndex);
+		});
+	}
+
+	/**
+	 * Get the constant pool index of a field of the generated class, adding it if needed
+	 * @param name - field name
+	 * @param descriptor - field descriptor
+	 * @return - constant pool index
+	 */
+	private int fieldref(String name, String descriptor) {
+		int owner = classref(CLASS_NAME);
+		int type = nameAndType(name, descriptor);
+		return constant("f" + name + " " + descriptor, 9, () -> {
+			poolOut.writeShort(owner);
+			poolOut.writeShort(type);
+		});
+	}
+
+	/**
+	 * Get the constant pool index of a method, adding it if needed
+	 * @param className - internal name of the class holding the method
+	 * @param name - method name
+	 * @param descriptor - method descriptor
+	 * @return - constant pool index
+	 */
+	private int methodref(String className, String name, String descriptor) {
+		int owner = classref(className);
+		int type = nameAndType(name, descriptor);
+		return constant("m" + className + "." + name + descriptor, 10, () -> {
+			poolOut.writeShort(owner);
+			poolOut.writeShort(type);
+		});
+	}
+
+	/**
+	 * Get the constant pool index of a constant, adding it if needed
+	 * @param key - unique key of the constant
+	 * @param tag - constant pool tag
+	 * @param body - writer for the body of the constant
+	 * @return - constant pool index
+	 */
+	private int constant(String key, int tag, PoolWriter body) {
+		Integer index = constants.get(key);
+		if(index != null) return index;
+		try {
+			poolOut.writeByte(tag);
+			body.write();
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+		if(poolSize == 0xFFFF) throw new RuntimeException("Constant pool overflow");
+		constants.put(key, poolSize);
+		return poolSize++;
+	}
+
+	/**
+	 * Writer for the body of a constant pool entry
+	 */
+	@FunctionalInterface
+	private interface PoolWriter {
+		/**
+		 * Write the body of the constant
+		 * @throws IOException - if the body cannot be written
+		 */
+		void write() throws IOException;
+	}
+}
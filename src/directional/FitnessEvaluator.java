@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+/**
+ * Evaluator specialized to the epistasis table of a landscape. Evaluators sum the fitness contributions of the
+ * loci in locus order, so all evaluators of a landscape return identical values
+ * @author Sharad Singhal
+ */
+public interface FitnessEvaluator {
+	/**
+	 * Get the value of fitness for a genome of up to 63 bits
+	 * @param genome - value of genome to be evaluated
+	 * @return - fitness value of the genome
+	 */
+	public float getFitness(long genome);
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.util.Random;
+
+/**
+ * Genome of arbitrary length N, held as bits packed into long words. Bit b of the genome is bit (b &amp; 63) of
+ * word (b &gt;&gt;&gt; 6). The genome carries a hash that is the XOR of a fixed 64-bit key for each set bit, so
+ * flipping a bit updates the hash in constant time. Genomes are mutable, so that they can be reused
+ * without allocation while a population is advanced
+ * @author Sharad Singhal
+ */
+public class Genome {
+	/** Number of bits in the genome */
+	private final int N;
+	/** Bits of the genome, packed into words */
+	final long words[];
+	/** Hash of the genome, the XOR of the keys for all set bits */
+	private long hash = 0;
+
+	/**
+	 * Create a genome with all bits zero
+	 * @param N - number of bits in the genome
+	 */
+	public Genome(int N) {
+		if(N < 1) throw new RuntimeException("N must be > 0 found "+N);
+		this.N = N;
+		words = new long[getWords(N)];
+		return;
+	}
+
+	/**
+	 * Create a copy of a genome
+	 * @param genome - genome to copy
+	 */
+	public Genome(Genome genome) {
+		N = genome.N;
+		words = genome.words.clone();
+		hash = genome.hash;
+		return;
+	}
+
+	/**
+	 * Get the number of long words needed to hold a genome
+	 * @param N - number of bits in the genome
+	 * @return - number of words
+	 */
+	public static int getWords(int N) {
+		return (N + Long.SIZE - 1) >>> 6;
+	}
+
+	/**
+	 * Get the number of bits in this genome
+	 * @return - N for this genome
+	 */
+	public int getN() {
+		return N;
+	}
+
+	/**
+	 * Get a bit in this genome
+	 * @param bit - bit [0,N) to get
+	 * @return - true if the bit is set
+	 */
+	public boolean get(int bit) {
+		return (words[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * Flip a bit in this genome
+	 * @param bit - bit [0,N) to flip
+	 */
+	public void flip(int bit) {
+		words[bit >>> 6] ^= 1L << bit;
+		hash ^= key(bit);
+		return;
+	}
+
+	/**
+	 * Set this genome to the value of another genome of the same length
+	 * @param genome - genome to copy
+	 */
+	public void copyFrom(Genome genome) {
+		System.arraycopy(genome.words, 0, words, 0, words.length);
+		hash = genome.hash;
+		return;
+	}
+
+	/**
+	 * Set this genome from words held in an array
+	 * @param source - array holding the words of the genome
+	 * @param offset - offset of the first word in the array
+	 * @param sourceHash - hash of the genome held in the array
+	 */
+	void copyFrom(long source[], int offset, long sourceHash) {
+		System.arraycopy(source, offset, words, 0, words.length);
+		hash = sourceHash;
+		return;
+	}
+
+	/**
+	 * Copy the words of this genome into an array
+	 * @param target - array to hold the words
+	 * @param offset - offset of the first word in the array
+	 */
+	void copyTo(long target[], int offset) {
+		System.arraycopy(words, 0, target, offset, words.length);
+		return;
+	}
+
+	/**
+	 * Check if this genome is equal to a genome held in an array
+	 * @param source - array holding the words of the genome
+	 * @param offset - offset of the first word in the array
+	 * @return - true if the genomes are equal
+	 */
+	boolean matches(long source[], int offset) {
+		for(int w = 0; w < words.length; w++){
+			if(words[w] != source[offset + w]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Set all bits of this genome to random values
+	 * @param random - random number generator to use
+	 */
+	public void randomize(Random random) {
+		for(int w = 0; w < words.length; w++) words[w] = random.nextLong();
+		// clear the unused bits in the last word
+		if((N & 63) != 0) words[words.length-1] &= (1L << N) - 1;
+		rehash();
+		return;
+	}
+
+	/**
+	 * Recompute the hash from the bits of the genome
+	 */
+	private void rehash() {
+		hash = 0;
+		for(int w = 0; w < words.length; w++){
+			for(long bits = words[w]; bits != 0; bits &= bits - 1){
+				hash ^= key((w << 6) | Long.numberOfTrailingZeros(bits));
+			}
+		}
+		return;
+	}
+
+	/**
+	 * Get the 64-bit hash of this genome
+	 * @return - hash of the genome
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Get the hash key for a bit. Keys are fixed, so equal genomes always have equal hashes
+	 * @param bit - bit in the genome
+	 * @return - 64-bit key for the bit
+	 */
+	static long key(int bit) {
+		// splitmix64 finalizer applied to the bit position
+		long z = (bit + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) return true;
+		if(!(o instanceof Genome)) return false;
+		Genome g = (Genome) o;
+		return N == g.N && hash == g.hash && matches(g.words, 0);
+	}
+
+	/**
+	 * Get the genome as a hexadecimal string, most significant digit first
+	 * @return - string of (N+3)/4 hexadecimal digits
+	 */
+	@Override
+	public String toString() {
+		int digits = (N + 3) >>> 2;
+		StringBuilder b = new StringBuilder(digits);
+		for(int d = digits-1; d >= 0; d--){
+			b.append(Character.forDigit((int) (words[d >>> 4] >>> ((d & 15) << 2)) & 0xf, 16));
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Parse a genome from a hexadecimal string
+	 * @param N - number of bits in the genome
+	 * @param value - hexadecimal value of the genome, most significant digit first
+	 * @return - genome with the given value
+	 */
+	public static Genome parse(int N, String value) {
+		Genome g = new Genome(N);
+		int digits = value.length();
+		for(int d = 0; d < digits; d++){
+			int v = Character.digit(value.charAt(digits-1-d), 16);
+			if(v < 0 || ((d << 2) >= N && v != 0)) throw new RuntimeException("Illegal genome value "+value+" for N = "+N);
+			if(v != 0) g.words[d >>> 4] |= (long) v << ((d & 15) << 2);
+		}
+		if((N & 63) != 0 && (g.words[g.words.length-1] & -(1L << N)) != 0) throw new RuntimeException("Illegal genome value "+value+" for N = "+N);
+		g.rehash();
+		return g;
+	}
+}
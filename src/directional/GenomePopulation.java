@@ -0,0 +1,668 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * GenomePopulation - tracks populations of multi-word genomes of arbitrary length by their counts. The words of the
+ * genomes present are held in slots of a single long[] arena, found through an open-addressing index on the genome
+ * hash. Parents and offspring are built in reusable Genome objects, so replication does not allocate
+ * except when the arena grows
+ * @author Sharad Singhal
+ */
+public class GenomePopulation implements Population {
+	/** Initial number of genome slots */
+	private static final int INITIAL_CAPACITY = 1024;
+	/** Simulation configuration */
+	private Configuration config;
+	/** current generation */
+	private int generation;
+	/** number of words in each genome */
+	private int W;
+	/** words of the genomes, W words per slot */
+	private long arena[];
+	/** genome hashes, indexed by slot */
+	private long hashes[];
+	/** genome counts in the population, indexed by slot */
+	private int count[];
+	/** count of offspring during replication, indexed by slot */
+	private int offspringCount[];
+	/** number of offspring produced at each one-bit neighbor of a genome */
+	private int neighbors[];
+	/** fitness values of the genomes, indexed by slot */
+	private float fitness[];
+	/** fitness values of the genomes under the shock landscape, indexed by slot */
+	private float shockFitness[];
+	/** number of slots in use */
+	private int size = 0;
+	/** open-addressing hash index from genome to (slot+1). 0 marks an empty entry */
+	private int index[];
+	/** number of bits in the hash index */
+	private int indexBits;
+	/** reusable genome holding the parent during replication */
+	private Genome parent;
+	/** reusable genome holding the offspring during replication */
+	private Genome offspring;
+	/** bits flipped by the last mutation */
+	private int flips[];
+	/** number of bits in flips[] */
+	private int nFlips = 0;
+	/** Genome size in bits */
+	private int N;
+	/** Trace writer to write the simulation trace to a file */
+	private TraceWriter writer = null;
+	/** average fitness for the population */
+	private double average;
+	/** average fitness for the population under shocks */
+	private double shockAverage;
+	/** standard deviation for the population */
+	private double stdev;
+	/** standard deviation for the population under shocks */
+	private double shockStDev;
+	/** shannon diversity for the population */
+	private double diversity;
+	/** maximum population size limit */
+	private int maxPopulation;
+	/** growth factor per generation */
+	private double alpha;
+	/** current population size */
+	private int populationSize;
+	/** evenness of population */
+	private double even;
+	/** Replication Landscape being used */
+	private Landscape landscape;
+	/** Shock landscape being used */
+	private Landscape shockLandscape;
+	/** true if offspring fitness is evaluated incrementally from the parent */
+	private boolean incremental;
+	/** maximum fitness of all genomes evaluated so far */
+	private float maxFit = 0;
+
+	/**
+	 * Create a population of multi-word genomes
+	 * @param config - Configuration to use
+	 */
+	public GenomePopulation(Configuration config) {
+		this.config = config;
+		N = config.getN();
+		W = Genome.getWords(N);
+		generation = 0;
+		maxPopulation = config.getMaxPopulation();
+		alpha = config.getAlpha();
+		incremental = config.incrementalFitness();
+		arena = new long[INITIAL_CAPACITY * W];
+		hashes = new long[INITIAL_CAPACITY];
+		count = new int[INITIAL_CAPACITY];
+		offspringCount = new int[INITIAL_CAPACITY];
+		fitness = new float[INITIAL_CAPACITY];
+		shockFitness = new float[INITIAL_CAPACITY];
+		indexBits = Integer.numberOfTrailingZeros(INITIAL_CAPACITY) + 1;
+		index = new int[1 << indexBits];
+		parent = new Genome(N);
+		offspring = new Genome(N);
+		flips = new int[N];
+		neighbors = new int[N];
+		landscape = config.getLandscape();
+		// note we read landscapes before population, to allow computation of fitness
+		shockLandscape = config.getShockLandscape();
+		String populationFile = config.getPopulationFile();
+		if(populationFile == null || !readPopulation()){
+			// if no population file given, or if we could not read it, create an initial random population
+			for(int i = 0; i < config.getInitialPopulationSize(); i++){
+				config.getRandomGenome(offspring);
+				int slot = find(offspring);
+				if(slot < 0) slot = add(offspring, landscape.getFitness(offspring), shockLandscape.getFitness(offspring));
+				count[slot]++;
+				if(maxFit < fitness[slot]) maxFit = fitness[slot];
+			}
+			// if populationFile was given, and we were not able to read it, create it
+			if(populationFile != null){
+				writePopulation(populationFile);
+			}
+		}
+		// compute statistics based on initial population (generation = 0)
+		computeStatistics();
+		return;
+	}
+
+	/**
+	 * Find the slot holding a genome
+	 * @param g - genome to find
+	 * @return - slot holding the genome, or -1 if the genome is not in the population
+	 */
+	private int find(Genome g) {
+		int mask = index.length - 1;
+		long h = g.getHash();
+		for(int p = position(h); ; p = (p + 1) & mask){
+			int slot = index[p] - 1;
+			if(slot < 0) return -1;
+			if(hashes[slot] == h && g.matches(arena, slot * W)) return slot;
+		}
+	}
+
+	/**
+	 * Get the position of a genome hash in the hash index
+	 * @param h - genome hash
+	 * @return - starting position for the genome in the index
+	 */
+	private int position(long h) {
+		return (int) ((h * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - indexBits));
+	}
+
+	/**
+	 * Add a genome to the population with a count of 0
+	 * @param g - genome to add. It must not be in the population
+	 * @param f - fitness of the genome
+	 * @param sf - fitness of the genome on the shock landscape
+	 * @return - slot holding the genome
+	 */
+	private int add(Genome g, float f, float sf) {
+		if(size == hashes.length){
+			int capacity = size << 1;
+			arena = Arrays.copyOf(arena, capacity * W);
+			hashes = Arrays.copyOf(hashes, capacity);
+			count = Arrays.copyOf(count, capacity);
+			offspringCount = Arrays.copyOf(offspringCount, capacity);
+			fitness = Arrays.copyOf(fitness, capacity);
+			shockFitness = Arrays.copyOf(shockFitness, capacity);
+		}
+		int slot = size++;
+		g.copyTo(arena, slot * W);
+		hashes[slot] = g.getHash();
+		count[slot] = 0;
+		offspringCount[slot] = 0;
+		fitness[slot] = f;
+		shockFitness[slot] = sf;
+		// keep the index at most half full
+		if(size << 1 > index.length){
+			indexBits++;
+			rebuildIndex();
+		} else {
+			insert(slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Insert a slot into the hash index
+	 * @param slot - slot to insert
+	 */
+	private void insert(int slot) {
+		int mask = index.length - 1;
+		int p = position(hashes[slot]);
+		while(index[p] != 0) p = (p + 1) & mask;
+		index[p] = slot + 1;
+		return;
+	}
+
+	/**
+	 * Rebuild the hash index from the slots
+	 */
+	private void rebuildIndex() {
+		if(index.length != 1 << indexBits) index = new int[1 << indexBits];
+		else Arrays.fill(index, 0);
+		for(int slot = 0; slot < size; slot++) insert(slot);
+		return;
+	}
+
+	/**
+	 * Remove all genomes with zero count from the population, keeping the remaining slots in order
+	 */
+	private void removeExtinct() {
+		int n = 0;
+		for(int slot = 0; slot < size; slot++){
+			if(count[slot] == 0) continue;
+			if(n != slot) System.arraycopy(arena, slot * W, arena, n * W, W);
+			hashes[n] = hashes[slot];
+			count[n] = count[slot];
+			offspringCount[n] = offspringCount[slot];
+			fitness[n] = fitness[slot];
+			shockFitness[n] = shockFitness[slot];
+			n++;
+		}
+		if(n != size){
+			size = n;
+			rebuildIndex();
+		}
+		return;
+	}
+
+	/**
+	 * Compute the population statistics for the current population generation
+	 */
+	private void computeStatistics(){
+		// compute the current population size
+		populationSize = 0;
+		for(int slot = 0; slot < size; slot++){
+			populationSize += count[slot];
+		}
+		// if everyone is extinct, no stats can be obtained
+		if(populationSize == 0) {
+			average = shockAverage = stdev = shockStDev = diversity = even = -1;
+			return;
+		}
+		// compute the descriptive statistics
+		double size = populationSize;
+		double n = uniqueGenomes();
+		double sum = 0, sumA = 0, sumOfSquares = 0;
+		double shockSumA = 0, shockSumOfSquares = 0;
+		double denom = Math.log(size);
+		for(int slot = 0; slot < this.size; slot++){
+			double f = fitness[slot] * count[slot];			// sum of fitness for all genomes with this value on replication landscape
+			double sf = shockFitness[slot] * count[slot];	// sum of fitness for all genomes with this value on shock landscape
+			sumA += f;
+			shockSumA += sf;
+			sumOfSquares += fitness[slot] * f;				// sum of fitness^2 for all genomes with this value
+			shockSumOfSquares += shockFitness[slot] * sf;
+			sum += count[slot] * (Math.log(count[slot])-denom);		// sum pi * ln(pi); where pi = count[i]/uniques
+		}
+		diversity = -sum/size;
+		even = diversity / Math.log(n);
+		average = sumA/size;
+		stdev = Math.sqrt((sumOfSquares - sumA * sumA / size)/(size-1));
+		shockAverage = shockSumA/size;
+		shockStDev = Math.sqrt((shockSumOfSquares - shockSumA * shockSumA / size)/(size-1));
+		return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getGeneration()
+	 */
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#uniqueGenomes()
+	 */
+	@Override
+	public int uniqueGenomes() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#populationSize()
+	 */
+	@Override
+	public int populationSize() {
+		return populationSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getShannonDiversity()
+	 */
+	@Override
+	public double getShannonDiversity() {
+		return diversity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getEvenness()
+	 */
+	@Override
+	public double getEvenness(){
+		return even;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getAverageFitness()
+	 */
+	@Override
+	public double getAverageFitness() {
+		return average;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getAverageShockFitness()
+	 */
+	@Override
+	public double getAverageShockFitness(){
+		return shockAverage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getStandardDeviation()
+	 */
+	@Override
+	public double getStandardDeviation() {
+		return stdev;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getShockStDev()
+	 */
+	@Override
+	public double getShockStDev(){
+		return shockStDev;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getMaxFit()
+	 */
+	@Override
+	public float getMaxFit(){
+		return maxFit;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getMaxShockFit()
+	 */
+	@Override
+	public float getMaxShockFit(){
+		float maxShockFit = 0;
+		for(int slot = 0; slot < size; slot++){
+			if(maxShockFit < shockFitness[slot]) maxShockFit = shockFitness[slot];
+		}
+		return maxShockFit;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#advance()
+	 */
+	@Override
+	public boolean advance() {
+		if(size == 0){
+			// we have nothing left in the population, update statistics and return
+			computeStatistics();
+			return false;
+		}
+		// increment the generation counter
+		generation++;
+		float cutoff = config.getCutoff(generation);	// replication fitness cutoff for this generation
+
+		// Replication phase: mutate genes and update population for existing genomes
+		// compute probability of replication
+		float prob = maxPopulation == 0 ? 1.0F : Math.max(0.0F, Math.min(1.0F, (float)(alpha * (1.-(double)populationSize/(double)maxPopulation))));
+		boolean counting = config.getEngine() == Engine.COUNT;
+		boolean single = config.getMutationStrategy() == MutationStrategy.SINGLE_RANDOM;
+		int parents = size;	// offspring new to the population are added after the parents
+		for(int s = 0; s < parents; s++){
+			parent.copyFrom(arena, s * W, hashes[s]);
+			float replProb = config.getReplicationProbability(fitness[s]) * prob;
+			// the count engine draws the number of individuals that replicate, instead of flipping a coin for each
+			int imax = counting ? config.randomBinomial(count[s], replProb) : count[s];
+			if(counting && single && imax > N){
+				// more offspring than one-bit neighbors: spread them over the neighbors, evaluating each neighbor once
+				config.randomMultinomial(imax, neighbors);
+				for(int j = 0; j < N; j++){
+					if(neighbors[j] == 0) continue;
+					offspring.copyFrom(parent);
+					offspring.flip(j);
+					flips[0] = j;
+					nFlips = 1;
+					addOffspring(s, neighbors[j], cutoff);
+				}
+				continue;
+			}
+			for(int i = 0; i < imax; i++){	// for each individual of this genotype
+				// flip a coin to see if it generates offspring
+				if(counting || config.randomFloat() < replProb){
+					offspring.copyFrom(parent);
+					mutate(offspring);
+					addOffspring(s, 1, cutoff);
+				}
+			}
+		}
+		// add the new offspring to the population
+		for(int slot = 0; slot < size; slot++){
+			count[slot] += offspringCount[slot];
+			offspringCount[slot] = 0;
+		}
+		// Selection phase: remove any genes that fall below the cutoff.
+		for(int slot = 0; slot < size; slot++){
+			if(fitness[slot] < cutoff) count[slot] = 0;
+		}
+		removeExtinct();
+
+		// compute the statistics for this generation
+		computeStatistics();
+		if(size == 0){
+			return false;	// return if nothing left after selection
+		}
+
+		// At this point, we have gone through selection; write out the trace
+		writeTrace(cutoff, 0.0F);
+		return true;
+	}
+
+	/**
+	 * Evaluate the fitness of the current offspring
+	 * @param l - landscape to use
+	 * @param parentFitness - fitness of the parent on the landscape
+	 * @return - fitness of the offspring
+	 */
+	private float evaluate(Landscape l, float parentFitness) {
+		return incremental ? l.getFitnessDelta(parent, parentFitness, offspring, flips, nFlips) : l.getFitness(offspring);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#shock(float)
+	 */
+	@Override
+	public boolean shock(float shock){
+		if(size == 0) return false; // we have nothing left in the population, return
+		if(shock < 0) return true;	// nothing affected
+		System.out.println("Generation - "+generation+" Shock "+shock);
+
+		// we just have a selection phase for the shocks
+		for(int slot = 0; slot < size; slot++){
+			if(shockFitness[slot] < shock) count[slot] = 0;	// this genome will not survive
+		}
+		removeExtinct();
+
+		// re-compute the new statistics after the shock
+		computeStatistics();
+
+		if(size == 0){
+			return false;	// return if nothing left after selection
+		}
+
+		// At this point, we have gone through shock selection; write out the trace
+		writeTrace(0.0F, shock);
+		return true;
+	}
+
+	/**
+	 * Write the current population to the trace, if a trace is being written
+	 * @param cutoff - replication cutoff value
+	 * @param shock - current shock value
+	 */
+	private void writeTrace(float cutoff, float shock) {
+		if(writer == null) return;
+		for(int slot = 0; slot < size; slot++){
+			parent.copyFrom(arena, slot * W, hashes[slot]);
+			writer.write(generation, parent, count[slot], fitness[slot], cutoff, shockFitness[slot], shock);
+		}
+		return;
+	}
+
+	/**
+	 * Evaluate copies of the offspring genome, and add them to the offspring counts if they survive the selection phase
+	 * @param s - slot of the parent genome
+	 * @param n - number of offspring
+	 * @param cutoff - replication fitness cutoff for this generation
+	 */
+	private void addOffspring(int s, int n, float cutoff) {
+		int slot = find(offspring);
+		float ofit = slot >= 0 ? fitness[slot] : evaluate(landscape, fitness[s]);
+		if(maxFit < ofit) maxFit = ofit;
+		// if the offspring would survive the selection phase, add it to the population
+		if(ofit >= cutoff){
+			if(slot < 0) slot = add(offspring, ofit, evaluate(shockLandscape, shockFitness[s]));
+			offspringCount[slot] += n;
+		}
+		return;
+	}
+
+	/**
+	 * Mutate a genome in place, recording the bits flipped in flips[]
+	 * @param g - genome to mutate
+	 */
+	private void mutate(Genome g) {
+		nFlips = 0;
+		switch(config.getMutationStrategy()){
+		case REPLICATE:
+			return;
+		case SINGLE_RANDOM:
+			int bit = (int)(config.randomFloat()*N);	// single random bit[0:N)
+			g.flip(bit);
+			flips[nFlips++] = bit;
+			return;
+		case MULTI_RANDOM:
+			if(config.getEngine() == Engine.COUNT){
+				// jump between the flipped bits, skipping the bits left unchanged
+				for(int i = config.randomSkip(); i < N; i += config.randomSkip() + 1){
+					g.flip(i);
+					flips[nFlips++] = i;
+				}
+				return;
+			}
+			float p = config.getMutationProbability();
+			for(int i = 0; i < N; i++){
+				if(config.randomFloat() < p){
+					g.flip(i);
+					flips[nFlips++] = i;
+				}
+			}
+			return;
+		default:
+			break;
+		}
+		throw new RuntimeException("GenomePopulation: "+config.getMutationStrategy()+" not yet implemented");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#writePopulation()
+	 */
+	@Override
+	public void writePopulation() {
+		String outputFile = config.getFileName("pop-");
+		writePopulation(outputFile);
+		return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#writePopulation(java.io.PrintStream)
+	 */
+	@Override
+	public void writePopulation(PrintStream out) {
+		for(int slot = 0; slot < size; slot++){
+			parent.copyFrom(arena, slot * W, hashes[slot]);
+			out.println(String.format("%d %s %d %f %f", generation, parent, count[slot], fitness[slot], shockFitness[slot]));
+		}
+		return;
+	}
+
+	/**
+	 * Write the current population to a file. Genomes are written in hexadecimal
+	 * @param outputFile - file to write
+	 */
+	private void writePopulation(String outputFile){
+		try {
+			PrintStream out = new PrintStream(new File(outputFile));
+			out.println(Configuration.banner);
+			out.println("# Created "+ZonedDateTime.now().toString());
+			out.println("# N = "+N+", K = "+config.getK()+", seed = "+config.getSeed()+", shockseed = "+config.getSseed());
+			out.println("# gen genome count fitness shockfitness");
+			writePopulation(out);
+			out.close();
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open file "+outputFile);
+		}
+		return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#readPopulation()
+	 */
+	@Override
+	public boolean readPopulation() {
+		String populationFile = config.getPopulationFile();
+		try {
+			BufferedReader inp = new BufferedReader(new InputStreamReader(new FileInputStream(new File(populationFile))));
+			String line;
+			while((line = inp.readLine()) != null){
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				String [] parts = line.split(" ");
+				if(parts.length < 2){
+					inp.close();
+					throw new IOException("Unable to read population file "+populationFile+" Expected at least 2 values found "+parts.length);
+				}
+				// have either genome count, or generation genome count fitness shockfitness
+				int field = parts.length == 2 ? 0 : 1;
+				Genome g = Genome.parse(N, parts[field]);
+				int slot = find(g);
+				if(slot < 0) slot = add(g, landscape.getFitness(g), shockLandscape.getFitness(g));
+				count[slot] = Integer.parseInt(parts[field+1]);
+				if(maxFit < fitness[slot]) maxFit = fitness[slot];
+			}
+			inp.close();
+			return true;
+		} catch (IOException e) {
+			System.out.println(e.toString());
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#close()
+	 */
+	@Override
+	public void close(){
+		if(writer != null) writer.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#open()
+	 */
+	@Override
+	public boolean open() {
+		boolean status = false;
+		if(config.hasOption("trace")){
+			writer = TraceWriter.getWriter(config);
+			status =  writer.open();
+			if(status) writeTrace(config.getCutoff(generation), 0.0F);
+		}
+		return status;
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+/**
+ * Interface implemented by classes that receive genomes from a landscape scan
+ * @author Sharad Singhal
+ */
+@FunctionalInterface
+public interface GenomeVisitor {
+	/**
+	 * Visit a genome in the landscape
+	 * @param genome - value of the genome
+	 * @param fitness - fitness of the genome on the landscape
+	 */
+	public void visit(int genome, float fitness);
+}
@@ -14,40 +14,139 @@
  */
 package directional;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.time.ZonedDateTime;
-import java.util.BitSet;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * Class to hold a Fitness Landscape definition
  * @author Sharad Singhal
  */
 public class Landscape {
+	/** Suffix of landscape files written in the binary format */
+	public static final String BINARY_SUFFIX = ".nkb";
+	/** Magic number at the start of a binary landscape file ("NKLB") */
+	private static final int BINARY_MAGIC = 0x4E4B4C42;
+	/** Version of the binary landscape format */
+	private static final int BINARY_VERSION = 1;
+	/** Size of the binary landscape header (magic, version, N, K, seed) */
+	private static final int BINARY_HEADER = 4 * Integer.BYTES + Long.BYTES;
+	/** Largest N for which a dense (fully materialized) fitness table can be created */
+	public static final int MAX_DENSE_N = 30;
+	/** Suffix appended to the landscape file name to persist a dense fitness table */
+	public static final String DENSE_SUFFIX = ".dense";
+	/** Magic number at the start of a dense fitness file ("NKDF") */
+	private static final int DENSE_MAGIC = 0x4E4B4446;
+	/** Size of the dense fitness file header (magic, N, K, seed) */
+	private static final int DENSE_HEADER = 3 * Integer.BYTES + Long.BYTES;
+	/** Number of genomes written per buffer for dense tables */
+	private static final int DENSE_BLOCK = 1 << 16;
+	/** Number of genomes read per mapped region of a dense file */
+	private static final int DENSE_REGION = 1 << 26;
+	/** Number of genomes searched per task when locating peaks in parallel (a multiple of 64) */
+	private static final int PEAK_BLOCK = 1 << 14;
+	/** number of genomes evaluated together by the batch kernel, so their partial sums stay in the L1 cache */
+	private static final int BATCH = 256;
+	/** Handle for atomic updates to the words of a bit set held in a long[] */
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+	/** Number of threads used to search or materialize landscapes */
+	private static int threads = Runtime.getRuntime().availableProcessors();
+	/** Fork-join pool used to search or materialize landscapes */
+	private static ForkJoinPool pool = null;
+	/** Largest N for which peaks can be located */
+	public static final int MAX_PEAK_N = Integer.SIZE - 1;
+	/** Largest number of genome bits in a block searched by the memory-bounded peak finder */
+	private static final int MAX_PEAK_BLOCK_BITS = 22;
+	/** Memory ceiling (bytes) for locating peaks. Larger searches use the memory-bounded peak finder */
+	private static long peakMemory = Runtime.getRuntime().maxMemory() / 2;
+	/** Maximum genome size. Genomes longer than 63 bits are evaluated as packed multi-word Genomes */
+	public static final int MAX_N = 1 << 16;
+	/** Number of fitness table entries generated per task from the counter-based streams */
+	private static final int STREAM_BLOCK = 1 << 16;
+	/** Stream used for the epistasis table */
+	private static final int EPISTASIS_STREAM = 1;
+	/** Stream used for the fitness table */
+	static final int FITNESS_STREAM = 2;
+	/** If true, landscapes are generated from counter-based streams derived from the seed instead of java.util.Random */
+	private static boolean streams = false;
+	/** If true, landscapes compute their fitness table entries on demand instead of holding a fitness table */
+	private static boolean virtual = false;
+	/** log2 of the number of entries cached by each virtual fitness table, 0 for no cache */
+	private static int virtualCacheBits = 0;
+	/** If true, fitness tables of new landscapes are held as 16-bit fixed-point values */
+	private static boolean quantize = false;
+	/** Largest 16-bit code of a quantized fitness value */
+	private static final int QUANT_MAX = Character.MAX_VALUE;
+	/** Largest value of getQuantizationError() for tables of values in [0,1), half the step between codes */
+	public static final double MAX_QUANTIZATION_ERROR = 0.5 / QUANT_MAX;
 	/** N for the N,K model */
 	private int N;
 	/** K for the N,K model */
 	private int K;
 	/** table [N][K+1] to hold epistasis relationships */
 	private int epistasis_locations[][];
-	/** fitness values [pow(2,K+1)][N] corresponding to epistasis table */
-	private float fitness_table[][];
+	/** fitness values [N * pow(2,K+1)] corresponding to epistasis table, held locus-major: the value of gene index g
+	 * of locus i is at i * pow(2,K+1) + g, so the values read by a locus share cache lines. Files keep the [pow(2,K+1)][N] order */
+	private float fitness_table[];
+	/** fitness values computed on demand for virtual landscapes, which have no fitness_table; otherwise null */
+	private VirtualFitnessTable virtual_table = null;
+	/** true if the fitness table is replaced by quantized_table when the landscape is compiled */
+	private boolean quantize_table = false;
+	/** fitness values [N * pow(2,K+1)] as 16-bit codes, locus-major, for quantized landscapes, which have no fitness_table; otherwise null.
+	 * Code q stands for the value quant_min + q * quant_scale */
+	private char quantized_table[] = null;
+	/** smallest value in a quantized fitness table */
+	private double quant_min = 0;
+	/** step between successive codes of a quantized fitness table */
+	private double quant_scale = 0;
+	/** bit offsets [N][] of each genome byte read by a locus. A byte never spans two genome words */
+	private int gather_shift[][];
+	/** gather tables [N][256 * bytes read by the locus] giving the gene index bits contributed by each genome byte */
+	private int gather_table[][];
+	/** loci [N][] whose gene index reads each genome bit (reverse of the epistasis table) */
+	private int dependents[][];
+	/** gene index bits [N][] corresponding to each genome bit in the loci that read it (parallel to dependents) */
+	private int dependent_genes[][];
+	/** bit masks [N] of the genome bits read by each locus. Only defined for N &lt; 64 */
+	private long dependency_mask[];
+	/** evaluator for adjacent epistasis, or null if the epistasis table is not adjacent */
+	private AdjacentEvaluator adjacent = null;
+	/** evaluator specialized to the epistasis table, or null to use the gather tables */
+	private FitnessEvaluator evaluator = null;
+	/** bit-sliced evaluator for exhaustive scans, created when first needed */
+	private BitSlicedEvaluator bit_sliced = null;
+	/** fitness values [pow(2,N)] of all genomes, if the landscape has been materialized. Read-only once set */
+	private float dense_fitness[] = null;
 	/** Map containing landscape peaks */
-	private HashMap<Integer,Float> peaks = new HashMap<Integer,Float>();
+	private PeakMap peaks = new PeakMap();
 	/** max peak value in the landscape */
 	private float maxPeak = -Float.MAX_VALUE;
 	/** min peak value in the landscape */
 	private float minPeak = Float.MAX_VALUE;
 	/** Number of entries in the fitness table (pow(2,K+1)) */
 	private int kMax;
-	/** Maximum possible genome values (pow(2,N)) */
+	/** Maximum possible genome values (pow(2,N)), Integer.MAX_VALUE if N &gt; 30 */
 	private int maxGenomes;
 	/** Landscape file to use, if any */
 	private String landscapeFile;
@@ -61,24 +160,32 @@ public class Landscape {
 	 * @param N - N value for the landscape
 	 * @param K - K value for the landscape
 	 * @param e - Epistasis type to use
-	 * @param seed - seed for the random number generator. If 0, Math.random() is used
+	 * @param seed - seed for the random number generator. If 0, Math.random() is used, or a random seed is chosen and recorded
+	 * with the landscape if landscapes are generated from streams
 	 * @param landscapeFile - landscape file to use. If null, a random landscape is created. If file is given but does not exist, it is created
-	 * @param findPeaks - if true, locate all peaks in the landscape
+	 * @param findPeaks - if true, locate all peaks in the landscape. Peaks are only located if N &lt;= MAX_PEAK_N
 	 */
 	public Landscape(int N, int K, Epistasis e, long seed, String landscapeFile, boolean findPeaks){
-		if(N < 1 || N >= Integer.SIZE) throw new RuntimeException("N must be 0 < N < "+Integer.SIZE+" found "+N);
+		if(N < 1 || N > MAX_N) throw new RuntimeException("N must be 0 < N <= "+MAX_N+" found "+N);
 		if(K < 0 || K >= N) throw new RuntimeException("K must be 0 <= K < "+N+" found "+K);
+		// streams need a seed, so a random seed is chosen and recorded if none is given
+		if((streams || virtual) && seed == 0) seed = randomSeed();
 		this.seed = seed;
 		this.landscapeFile = landscapeFile;
 		this.N = N;
 		this.K = K;
 		maxGenomes = (int)(Math.pow(2, N));
+		if(virtual) virtual_table = new VirtualFitnessTable(seed, K, virtualCacheBits);
+		if(virtual) checkVirtualFile(landscapeFile);
+		quantize_table = quantize;
 		kMax = (int)Math.pow(2,K+1);
+		if(!virtual && (long) N * kMax > Integer.MAX_VALUE - 8) throw new RuntimeException("Fitness table for N = "+N+" K = "+K+" is too large");
 		if(seed != 0) random = new Random(seed);
 		epistasis_locations = new int[N][K+1];
-		fitness_table = new float[kMax][N];
-		// if we are not given a landscape, or if the landscape file cannot be read, create a random landscape
-		if(landscapeFile == null || !readLandscape()){
+		fitness_table = virtual ? null : new float[N * kMax];
+		// if we are not given a landscape, or if the landscape file cannot be read, create a random landscape.
+		// Virtual landscapes are always created from the seed, since landscape files do not hold their fitness table
+		if(landscapeFile == null || virtual || !readLandscape()){
 			// create the epistasis table
 			switch(e){
 			case ADJACENT:
@@ -101,7 +208,8 @@ public class Landscape {
 					if(i != N-1) candidates[i] = N-1;
 					for(int j = 1; j <= K; j++){
 						// we can select values located in candidates[0 ... N-j)
-						int ii = random != null ? random.nextInt(N-j) : (int) (Math.random()*(N-j));
+						int ii = streams || virtual ? streamIndex(streamKey(seed, EPISTASIS_STREAM), i * K + j - 1, N-j) :
+							random != null ? random.nextInt(N-j) : (int) (Math.random()*(N-j));
 						epistasis_locations[i][j] = candidates[ii];
 						candidates[ii] = candidates[N-j-1];
 					}
@@ -110,14 +218,24 @@ public class Landscape {
 			default:
 				throw new RuntimeException("Internal Error. Not implemented Epistasis = "+e);
 			}
-			// create the fitness table
-			for(int i = 0; i < N; i++){
-				for(int j = 0; j < kMax; j++){
-					fitness_table[j][i] = random != null ? random.nextFloat() : (float) Math.random();
+			// create the fitness table, unless its entries are computed on demand
+			if(virtual){
+				// entries are computed from the seed when needed
+			} else if(streams){
+				fillFitnessTable(null, 0);
+			} else {
+				for(int i = 0; i < N; i++){
+					for(int j = 0; j < kMax; j++){
+						fitness_table[i * kMax + j] = random != null ? random.nextFloat() : (float) Math.random();
+					}
 				}
 			}
+			// compile the epistasis table before any genomes are evaluated
+			compileEpistasis();
 			// locate all peaks in the landscape
-			if(findPeaks){
+			if(findPeaks && N > MAX_PEAK_N){
+				System.out.println("*Warning* - Peaks are not located for N > "+MAX_PEAK_N);
+			} else if(findPeaks){
 				locatePeaks();
 			}
 			// if landscape file was defined, but not available, write it out
@@ -142,21 +260,28 @@ public class Landscape {
 	 * Create a landscape correlated with an original landscape
 	 * @param orig - original landscape to use as the template
 	 * @param rho - correlation coefficient -1 &lt;= rho &lt;= 1
-	 * @param seed - random number seed for this landscape, if any
+	 * @param seed - random number seed for this landscape. If 0, a random seed is chosen, and recorded with the landscape
 	 * @param landscapeFile - if given, generated landscape is written to this file
 	 */
 	public Landscape(Landscape orig, float rho, long seed, String landscapeFile){
 		if(rho < -1 || rho > 1) throw new RuntimeException("alpha must be -1 <= alpha <= 1. Found "+rho);
+		if(seed == 0) seed = randomSeed();
+		this.seed = seed;
 		this.landscapeFile = landscapeFile;
 		// replicate N, K, and epistasis table from the original landscape
 		this.N = orig.N;
 		this.K = orig.K;
 		maxGenomes = orig.maxGenomes;
 		kMax = orig.kMax;
-		random = seed != 0 ? new Random(seed) : new Random();
+		random = new Random(seed);
 		epistasis_locations = new int[N][K+1];
-		fitness_table = new float[kMax][N];
-		if(landscapeFile == null || !readLandscape()){
+		// landscapes correlated with a virtual landscape are also virtual
+		if(orig.virtual_table != null) virtual_table = new VirtualFitnessTable(seed, K, virtualCacheBits, orig.virtual_table, rho);
+		if(virtual_table != null) checkVirtualFile(landscapeFile);
+		// and landscapes correlated with a quantized landscape are also quantized
+		quantize_table = orig.quantized_table != null;
+		fitness_table = virtual_table != null ? null : new float[N * kMax];
+		if(landscapeFile == null || virtual_table != null || !readLandscape()){
 			for(int i = 0; i < N; i++){
 				for(int j=0; j < K+1; j++){
 					epistasis_locations[i][j] = orig.epistasis_locations[i][j];
@@ -165,12 +290,21 @@ public class Landscape {
 			// create the fitness table for the correlated landscape
 			// we currently treat the numbers in the table as a sequence. Can also use a correlation matrix if
 			// more complex relations are needed. See https://www.sitmo.com/?p=720 for examples
-			float beta = (float) Math.sqrt(1.-rho * rho);
-			for(int i = 0; i < N; i++){
-				for(int j = 0; j < kMax; j++){
-					fitness_table[j][i] = rho * orig.fitness_table[j][i] + beta * random.nextFloat();
+			float origTable[] = virtual_table != null ? null : orig.getFitnessTable();
+			if(virtual_table != null){
+				// entries are computed from the seed and the original landscape when needed
+			} else if(streams){
+				fillFitnessTable(origTable, rho);
+			} else {
+				float beta = (float) Math.sqrt(1.-rho * rho);
+				for(int i = 0; i < N; i++){
+					for(int j = 0; j < kMax; j++){
+						fitness_table[i * kMax + j] = rho * origTable[i * kMax + j] + beta * random.nextFloat();
+					}
 				}
 			}
+			// compile the epistasis table once the fitness table is complete, since compiling may quantize it
+			compileEpistasis();
 			// if the original has peaks located, locate them
 			if(orig.getMaxPeak() > 0){
 				locatePeaks();
@@ -185,72 +319,1121 @@ public class Landscape {
 
 
 	/**
-	 * Locate all peaks in this landscape.
+	 * Check that a virtual landscape does not replace an existing landscape file. Virtual landscapes are created from
+	 * the seed and written without their fitness table, so writing one over an existing file would lose its table
+	 * @param landscapeFile - landscape file given for the virtual landscape, or null
+	 */
+	private static void checkVirtualFile(String landscapeFile) {
+		if(landscapeFile != null && new File(landscapeFile).exists()){
+			throw new RuntimeException("Virtual landscapes cannot use the existing landscape file "+landscapeFile);
+		}
+		return;
+	}
+
+	/**
+	 * Compile the epistasis table into per-locus gather tables. For each locus, every genome byte that
+	 * holds one of its epistasis locations gets a 256-entry table giving the gene index bits that byte
+	 * contributes, so the gene index is gathered with one lookup per byte rather than one test per bit
+	 */
+	private void compileEpistasis() {
+		if(quantize_table && fitness_table != null) quantizeTable();
+		gather_shift = new int[N][];
+		gather_table = new int[N][];
+		for(int i = 0; i < N; i++){
+			// collect the distinct genome bytes read by this locus
+			int bytes[] = new int[K+1];
+			int nBytes = 0;
+			for(int j = 0; j <= K; j++){
+				int b = epistasis_locations[i][j] >>> 3;
+				int k = 0;
+				while(k < nBytes && bytes[k] != b) k++;
+				if(k == nBytes) bytes[nBytes++] = b;
+			}
+			gather_shift[i] = new int[nBytes];
+			gather_table[i] = new int[nBytes << 8];
+			for(int k = 0; k < nBytes; k++){
+				gather_shift[i][k] = bytes[k] << 3;
+				// gene bit j is set if the genome bit at epistasis_locations[i][j] is set
+				for(int v = 0; v < 256; v++){
+					int gene = 0;
+					for(int j = 0; j <= K; j++){
+						int loc = epistasis_locations[i][j];
+						if((loc >>> 3) == bytes[k] && (v & (1 << (loc & 7))) != 0) gene |= 1 << j;
+					}
+					gather_table[i][(k << 8) | v] = gene;
+				}
+			}
+		}
+		// landscapes with adjacent epistasis read each gene index as a rotated window of the genome
+		adjacent = fitness_table != null && N < Long.SIZE && K+1 < Integer.SIZE && AdjacentEvaluator.isAdjacent(epistasis_locations, N, K) ?
+				new AdjacentEvaluator(N, K, fitness_table) : null;
+		evaluator = adjacent;
+		// build the reverse dependency index from genome bits to the loci that read them
+		int nDependents[] = new int[N];
+		for(int i = 0; i < N; i++){
+			for(int j = 0; j <= K; j++){
+				if(isFirstRead(i, j)) nDependents[epistasis_locations[i][j]]++;
+			}
+		}
+		dependents = new int[N][];
+		dependent_genes = new int[N][];
+		for(int b = 0; b < N; b++){
+			dependents[b] = new int[nDependents[b]];
+			dependent_genes[b] = new int[nDependents[b]];
+			nDependents[b] = 0;
+		}
+		for(int i = 0; i < N; i++){
+			for(int j = 0; j <= K; j++){
+				if(!isFirstRead(i, j)) continue;
+				int b = epistasis_locations[i][j];
+				int genes = 0;
+				for(int jj = j; jj <= K; jj++){
+					if(epistasis_locations[i][jj] == b) genes |= 1 << jj;
+				}
+				dependents[b][nDependents[b]] = i;
+				dependent_genes[b][nDependents[b]++] = genes;
+			}
+		}
+		// the dependency masks are only needed for genomes held in a single long
+		if(N < Long.SIZE){
+			dependency_mask = new long[N];
+			for(int i = 0; i < N; i++){
+				for(int j = 0; j <= K; j++){
+					dependency_mask[i] |= 1L << epistasis_locations[i][j];
+				}
+			}
+		}
+		return;
+	}
+
+	/**
+	 * Check if an epistasis location is the first entry of a locus that reads its genome bit
+	 * @param i - locus in the genome
+	 * @param j - index [0,K] of the epistasis location
+	 * @return - true if no earlier epistasis location of the locus reads the same bit
+	 */
+	private boolean isFirstRead(int i, int j) {
+		for(int jj = 0; jj < j; jj++){
+			if(epistasis_locations[i][jj] == epistasis_locations[i][j]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Locate all peaks in this landscape. The fitness of every genome is first computed with a parallel scan of the
+	 * landscape, after which the genome space is split into blocks that are searched on the landscape thread pool.
+	 * Genomes that are not peaks are marked with atomic updates to a shared bit set. Since a genome is only marked when
+	 * a neighbor is strictly fitter, the peaks found do not depend on the number of threads.
+	 * If the fitness table and bit set do not fit in the peak memory ceiling, the memory-bounded peak finder is used.
 	 * Note that this method can be expensive in memory and/or time if N or K are large
 	 */
 	private void locatePeaks() {
-		BitSet candidateSet = new BitSet(maxGenomes);
-		float[] fitness = new float[maxGenomes];
+		if(dense_fitness == null && (N > MAX_DENSE_N || ((long) maxGenomes * Float.BYTES + maxGenomes / 8) > peakMemory)){
+			locatePeaksBounded();
+			return;
+		}
+		float fitness[] = dense_fitness;
+		if(fitness == null){
+			float values[] = new float[maxGenomes];
+			parallelScan((genome, f) -> values[genome] = f);
+			fitness = values;
+		}
+		float table[] = fitness;
+		long candidateSet[] = new long[(maxGenomes + 63) >>> 6];
+		int blockSize = Math.min(maxGenomes, PEAK_BLOCK);
 		// search through all candidates, and mark those that are NOT peaks
-		for(int candidate = 0; candidate < maxGenomes; candidate++){
-			if(candidateSet.get(candidate)) continue;	// already tested earlier as not a peak; no need to search further
-			float candidateFitness = fitness[candidate] = getFitness(candidate);
-			int mask = 1;
-			// search candidates that are 1 Hamming distance away from this candidate
-			// note that there are exactly N such candidates
-			for(int j = 0; j < N; j++){
-				// flip the bit in the candidate corresponding to the 1-bit in the mask
-				int neighbor = ((candidate & mask) != 0) ? candidate & ~mask : candidate | mask;
-				float neighborFit = fitness[neighbor] > 0 ? fitness[neighbor] : (fitness[neighbor] = getFitness(neighbor));
-				if(neighborFit > candidateFitness){
-					// at least one neighbor is higher, mark candidate as not a peak,
-					// and continue to the next candidate
-					candidateSet.set(candidate);
-					break;
-				} else if(neighborFit < candidateFitness && !candidateSet.get(neighbor)){
-					// the neighbor is NOT a peak, and was not already marked, mark the neighbor as not a peak,
-					// and continue searching for neighbors of this candidate
-					candidateSet.set(neighbor);
-				} 
-				mask <<= 1;
-			}
-			// if(i % 1000 == 0) System.out.println(i);
-		}
-		// at this  point, all points with value 0 in the candidateSet are peaks
+		forEachBlock(maxGenomes / blockSize, b -> {
+			for(int candidate = b * blockSize, end = candidate + blockSize; candidate < end; candidate++){
+				if(isMarked(candidateSet, candidate)) continue;	// already tested earlier as not a peak; no need to search further
+				float candidateFitness = table[candidate];
+				// search the N candidates that are 1 Hamming distance away from this candidate
+				for(int j = 0; j < N; j++){
+					int neighbor = candidate ^ (1 << j);
+					float neighborFit = table[neighbor];
+					if(neighborFit > candidateFitness){
+						// at least one neighbor is higher, mark candidate as not a peak,
+						// and continue to the next candidate
+						mark(candidateSet, candidate);
+						break;
+					} else if(neighborFit < candidateFitness && !isMarked(candidateSet, neighbor)){
+						// the neighbor is NOT a peak, and was not already marked, mark the neighbor as not a peak,
+						// and continue searching for neighbors of this candidate
+						mark(candidateSet, neighbor);
+					}
+				}
+			}
+		});
+		// at this point, all genomes not marked in the candidateSet are peaks
 		for(int i = 0; i < maxGenomes; i++){
-			if(!candidateSet.get(i)){
+			if(!isMarked(candidateSet, i)){
 				peaks.put(i, fitness[i]);
 				if(maxPeak < fitness[i]) maxPeak = fitness[i];
 				if(minPeak > fitness[i]) minPeak = fitness[i];
 			}
 		}
+		peaks.trim();
+		return;
+	}
+
+	/**
+	 * Locate all peaks in this landscape without allocating pow(2,N) sized tables. The genome space is split into blocks
+	 * sized to fit the peak memory ceiling, and each block is handled by one task on the landscape thread pool. The task
+	 * scans the fitness of its block, marks genomes that have a fitter neighbor within the block, and recomputes on demand
+	 * the fitness of neighbors outside the block only for the few genomes that are still unmarked. Memory use is a
+	 * block-sized fitness buffer per running task, plus the peaks found. Buffers are allocated by each task, so none
+	 * outlive the search. The peaks found are the same as with locatePeaks()
+	 */
+	private void locatePeaksBounded() {
+		int blockBits = 63 - Long.numberOfLeadingZeros(Math.max(1L, peakMemory / threads / Float.BYTES));
+		blockBits = Math.max(Math.min(N, 6), Math.min(Math.min(N, MAX_PEAK_BLOCK_BITS), blockBits));
+		int bits = blockBits;
+		int blockSize = 1 << bits;
+		int blocks = (int) ((1L << N) >>> bits);
+		int blockPeaks[][] = new int[blocks][];
+		float blockPeakFitness[][] = new float[blocks][];
+		forEachBlock(blocks, b -> {
+			float fitness[] = new float[blockSize];
+			long candidateSet[] = new long[(blockSize + 63) >>> 6];
+			int base = b << bits;
+			scan(base, bits, (genome, f) -> fitness[genome & (blockSize - 1)] = f);
+			int nPeaks = 0;
+			for(int low = 0; low < blockSize; low++){
+				float candidateFitness = fitness[low];
+				// neighbors within the block
+				for(int j = 0; j < bits; j++){
+					if(fitness[low ^ (1 << j)] > candidateFitness){
+						candidateSet[low >>> 6] |= 1L << low;
+						break;
+					}
+				}
+				if((candidateSet[low >>> 6] & (1L << low)) != 0) continue;
+				// neighbors in other blocks
+				for(int j = bits; j < N; j++){
+					if(getFitness((base | low) ^ (1 << j)) > candidateFitness){
+						candidateSet[low >>> 6] |= 1L << low;
+						break;
+					}
+				}
+				if((candidateSet[low >>> 6] & (1L << low)) == 0) nPeaks++;
+			}
+			// collect the peaks in this block
+			blockPeaks[b] = new int[nPeaks];
+			blockPeakFitness[b] = new float[nPeaks];
+			for(int low = 0, p = 0; p < nPeaks; low++){
+				if((candidateSet[low >>> 6] & (1L << low)) != 0) continue;
+				blockPeaks[b][p] = base | low;
+				blockPeakFitness[b][p++] = fitness[low];
+			}
+		});
+		// record the peaks in genome order
+		int nPeaks = 0;
+		for(int b = 0; b < blocks; b++) nPeaks += blockPeaks[b].length;
+		peaks = new PeakMap(nPeaks);
+		for(int b = 0; b < blocks; b++){
+			for(int p = 0; p < blockPeaks[b].length; p++){
+				float f = blockPeakFitness[b][p];
+				peaks.put(blockPeaks[b][p], f);
+				if(maxPeak < f) maxPeak = f;
+				if(minPeak > f) minPeak = f;
+			}
+			blockPeaks[b] = null;
+			blockPeakFitness[b] = null;
+		}
+		peaks.trim();
+		return;
+	}
+
+	/**
+	 * Scan all genomes in the landscape in Gray-code order. Consecutive genomes differ in exactly one bit, so only the
+	 * loci that read that bit have their gene index updated. Fitness values are identical to those from getFitness()
+	 * @param visitor - visitor called with each genome and its fitness
+	 */
+	public void scan(GenomeVisitor visitor) {
+		scan(0, N, visitor);
+		return;
+	}
+
+	/**
+	 * Scan all genomes in the landscape, splitting the genome space into blocks that are scanned on the landscape thread pool.
+	 * Blocks are evaluated 64 genomes at a time with the bit-sliced evaluator, or in Gray-code order for N &lt; 6
+	 * @param visitor - visitor called with each genome and its fitness. It may be called concurrently from different threads
+	 */
+	public void parallelScan(GenomeVisitor visitor) {
+		int blockBits = Math.min(N, Integer.numberOfTrailingZeros(PEAK_BLOCK));
+		int blocks = (int) ((1L << N) >>> blockBits);	// maxGenomes saturates at N = 31
+		if(dense_fitness == null && fitness_table != null && blockBits >= Integer.numberOfTrailingZeros(BitSlicedEvaluator.LANES)){
+			BitSlicedEvaluator evaluator = getBitSlicedEvaluator();
+			int size = 1 << blockBits;
+			forEachBlock(blocks, b -> {
+				float values[] = new float[size];
+				int base = b << blockBits;
+				for(int k = 0; k < size; k += BitSlicedEvaluator.LANES) evaluator.evaluateBlock(base | k, values, k);
+				for(int k = 0; k < size; k++) visitor.visit(base | k, values[k]);
+			});
+			return;
+		}
+		forEachBlock(blocks, b -> scan(b << blockBits, blockBits, visitor));
+		return;
+	}
+
+	/**
+	 * Scan a block of genomes in Gray-code order. The block holds the pow(2,bits) genomes that have the same high bits as
+	 * the base genome
+	 * @param base - first genome in the block. Bits [0,bits) must be zero
+	 * @param bits - number of low-order bits enumerated in the block
+	 * @param visitor - visitor called with each genome and its fitness
+	 */
+	public void scan(int base, int bits, GenomeVisitor visitor) {
+		if(N > MAX_PEAK_N) throw new RuntimeException("Landscapes can only be scanned for N <= "+MAX_PEAK_N+" found "+N);
+		if(bits < 0 || bits > N || (base & (int) ((1L << bits) - 1)) != 0 || (base >>> N) != 0) {
+			throw new RuntimeException("Illegal scan block "+base+" with "+bits+" bits for N = "+N);
+		}
+		long size = 1L << bits;	// a block of 31 bits holds pow(2,31) genomes, more than an int can count
+		if(dense_fitness != null){
+			for(long k = 0; k < size; k++){
+				int genome = base | (int) (k ^ (k >>> 1));
+				visitor.visit(genome, dense_fitness[genome]);
+			}
+			return;
+		}
+		int gene[] = new int[N];
+		for(int i = 0; i < N; i++) gene[i] = getGene(i, base);
+		int genome = base;
+		visitor.visit(genome, sumFitness(gene));
+		for(long k = 1; k < size; k++){
+			// the k-th Gray code differs from the previous one in the lowest set bit of k
+			int bit = Long.numberOfTrailingZeros(k);
+			genome ^= 1 << bit;
+			int loci[] = dependents[bit];
+			int genes[] = dependent_genes[bit];
+			for(int d = 0; d < loci.length; d++){
+				gene[loci[d]] ^= genes[d];
+			}
+			visitor.visit(genome, sumFitness(gene));
+		}
+		return;
+	}
+
+	/**
+	 * Get the fitness value of a locus from the fitness table, the quantized fitness table, or the virtual fitness table
+	 * @param i - locus in the genome
+	 * @param gene - gene index of the locus
+	 * @return - fitness value of the locus
+	 */
+	private float entry(int i, int gene) {
+		if(fitness_table != null) return fitness_table[i * kMax + gene];
+		if(quantized_table != null) return (float) (quant_min + quantized_table[i * kMax + gene] * quant_scale);
+		return virtual_table.get(i, gene);
+	}
+
+	/**
+	 * Get the fitness corresponding to a set of gene indices
+	 * @param gene - gene index [N] for each locus
+	 * @return - fitness value
+	 */
+	private float sumFitness(int gene[]) {
+		float fitness = 0;
+		if(quantized_table != null){
+			long sum = 0;
+			for(int i = 0, row = 0; i < N; i++, row += kMax) sum += quantized_table[row + gene[i]];
+			return dequantizeMean(sum);
+		}
+		if(virtual_table != null){
+			for(int i = 0; i < N; i++) fitness += virtual_table.get(i, gene[i]);
+			fitness /= N;
+			return fitness;
+		}
+		for(int i = 0, row = 0; i < N; i++, row += kMax){
+			fitness += fitness_table[row + gene[i]];
+		}
+		fitness /= N;
+		return fitness;
+	}
+
+	/**
+	 * Check if a genome is marked in a bit set shared between threads
+	 * @param words - words of the bit set
+	 * @param genome - genome to check
+	 * @return - true if the genome is marked
+	 */
+	private static boolean isMarked(long words[], int genome) {
+		return ((long) WORDS.getOpaque(words, genome >>> 6) & (1L << genome)) != 0;
+	}
+
+	/**
+	 * Atomically mark a genome in a bit set shared between threads
+	 * @param words - words of the bit set
+	 * @param genome - genome to mark
+	 */
+	private static void mark(long words[], int genome) {
+		WORDS.getAndBitwiseOr(words, genome >>> 6, 1L << genome);
+		return;
+	}
+
+	/**
+	 * Fill the fitness table from the counter-based fitness stream of the seed. Entry c of the (locus-major) table
+	 * depends only on the seed and c, so blocks of the table are filled in parallel, with the same values for any number of threads
+	 * @param orig - fitness table of the landscape to correlate with, or null for an uncorrelated landscape
+	 * @param rho - correlation coefficient with the original table
+	 */
+	private void fillFitnessTable(float orig[], float rho) {
+		float beta = (float) Math.sqrt(1.-rho * rho);
+		int size = fitness_table.length;
+		long key = streamKey(seed, FITNESS_STREAM);
+		forEachBlock((size + STREAM_BLOCK - 1) / STREAM_BLOCK, b -> {
+			int end = Math.min(size, (b + 1) * STREAM_BLOCK);
+			for(int c = b * STREAM_BLOCK; c < end; c++){
+				float r = streamFloat(key, c);
+				fitness_table[c] = orig == null ? r : rho * orig[c] + beta * r;
+			}
+		});
+		return;
+	}
+
+	/**
+	 * Get the key of a counter-based random stream. Value c of the stream is a splitmix64 hash of the key and c,
+	 * so any value can be computed independently of all others
+	 * @param seed - seed of the landscape
+	 * @param stream - stream to use
+	 * @return - key of the stream
+	 */
+	static long streamKey(long seed, int stream) {
+		return mix64(seed + stream * 0xD1B54A32D192ED03L);
+	}
+
+	/**
+	 * Get a float in [0,1) from a counter-based random stream, with the 24-bit precision of Random.nextFloat()
+	 * @param key - key of the stream
+	 * @param counter - position of the value in the stream
+	 * @return - random float value
+	 */
+	static float streamFloat(long key, long counter) {
+		return (mix64(key + (counter + 1) * 0x9E3779B97F4A7C15L) >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * Get an index in [0,bound) from a counter-based random stream
+	 * @param key - key of the stream
+	 * @param counter - position of the value in the stream
+	 * @param bound - number of possible indices
+	 * @return - random index
+	 */
+	private static int streamIndex(long key, long counter, int bound) {
+		return (int) (((mix64(key + (counter + 1) * 0x9E3779B97F4A7C15L) >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * splitmix64 finalizer
+	 * @param z - value to mix
+	 * @return - mixed value
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Choose a non-zero random seed for a landscape created without one
+	 * @return - random seed
+	 */
+	private static long randomSeed() {
+		Random r = new Random();
+		long seed;
+		do {
+			seed = r.nextLong();
+		} while(seed == 0);
+		return seed;
+	}
+
+	/**
+	 * Select how landscapes are generated. Landscapes generated from counter-based streams are reproducible from the seed,
+	 * and their fitness tables are filled in parallel. They differ from landscapes generated with java.util.Random from the same seed
+	 * @param useStreams - if true, generate landscapes from counter-based streams derived from the seed
+	 */
+	public static void setStreamGeneration(boolean useStreams) {
+		streams = useStreams;
+		return;
+	}
+
+	/**
+	 * Check how landscapes are generated
+	 * @return - true if landscapes are generated from counter-based streams
+	 */
+	public static boolean isStreamGeneration() {
+		return streams;
+	}
+
+	/**
+	 * Select whether landscapes hold a fitness table, or compute its entries on demand. Virtual landscapes need O(N)
+	 * memory for any K &lt; 30, and are generated from counter-based streams, so they have the same fitness values as
+	 * landscapes generated from streams with the same seed. Entries are computed with a hash for each lookup, so
+	 * evaluation is slower than with a fitness table
+	 * @param useVirtual - if true, landscapes compute fitness table entries on demand
+	 * @param cacheBits - log2 of the number of entries cached by each landscape, 0 for no cache (see VirtualFitnessTable)
+	 */
+	public static void setVirtualTables(boolean useVirtual, int cacheBits) {
+		if(cacheBits != 0 && (cacheBits < VirtualFitnessTable.MIN_CACHE_BITS || cacheBits > VirtualFitnessTable.MAX_CACHE_BITS)){
+			throw new RuntimeException("Cache bits must be 0 or "+VirtualFitnessTable.MIN_CACHE_BITS+" <= bits <= "+VirtualFitnessTable.MAX_CACHE_BITS+" found "+cacheBits);
+		}
+		virtual = useVirtual;
+		virtualCacheBits = cacheBits;
 		return;
 	}
 
+	/**
+	 * Check if landscapes compute their fitness table entries on demand
+	 * @return - true if new landscapes are virtual
+	 */
+	public static boolean isVirtualTables() {
+		return virtual;
+	}
+
+	/**
+	 * Check if this landscape computes its fitness table entries on demand
+	 * @return - true if this landscape is virtual
+	 */
+	public boolean isVirtual() {
+		return virtual_table != null;
+	}
+
+	/**
+	 * Select whether the fitness tables of new landscapes are held as 16-bit fixed-point values, halving their memory.
+	 * Table values are mapped onto 65536 evenly spaced codes between the smallest and largest value in the table, so
+	 * each value, and hence the fitness of each genome, is within getQuantizationError() of the float value. For
+	 * tables of values in [0,1) the error is at most MAX_QUANTIZATION_ERROR (7.6e-6). Landscapes correlated with a quantized landscape are also
+	 * quantized. Virtual landscapes have no table, and are not quantized
+	 * @param useQuantized - if true, fitness tables are quantized
+	 */
+	public static void setQuantizedTables(boolean useQuantized) {
+		quantize = useQuantized;
+		return;
+	}
+
+	/**
+	 * Check if the fitness tables of new landscapes are quantized
+	 * @return - true if new landscapes hold 16-bit fitness tables
+	 */
+	public static boolean isQuantizedTables() {
+		return quantize;
+	}
+
+	/**
+	 * Check if this landscape holds a quantized fitness table
+	 * @return - true if fitness table values are 16-bit codes
+	 */
+	public boolean isQuantized() {
+		return quantized_table != null;
+	}
+
+	/**
+	 * Get the bound on the error in table values, and in the fitness of any genome, introduced by quantization. The
+	 * fitness of a genome is the mean of N table values, so its error is bounded by the largest error of a table value
+	 * @return - half the step between codes, or 0 if the landscape is not quantized
+	 */
+	public double getQuantizationError() {
+		return quantized_table != null ? quant_scale / 2 : 0;
+	}
+
+	/**
+	 * Replace the fitness table by 16-bit codes spanning the range of its values
+	 */
+	private void quantizeTable() {
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+		for(float f : fitness_table){
+			if(min > f) min = f;
+			if(max < f) max = f;
+		}
+		quant_min = min;
+		quant_scale = max > min ? ((double) max - min) / QUANT_MAX : 1;
+		char table[] = new char[fitness_table.length];
+		for(int c = 0; c < table.length; c++){
+			table[c] = (char) Math.round((fitness_table[c] - quant_min) / quant_scale);
+		}
+		quantized_table = table;
+		fitness_table = null;
+		return;
+	}
+
+	/**
+	 * Get the fitness of a genome from the sum of the codes of its N table values
+	 * @param sum - sum of the codes
+	 * @return - fitness value
+	 */
+	private float dequantizeMean(long sum) {
+		return (float) (quant_min + quant_scale * ((double) sum / N));
+	}
+
+	/**
+	 * Get the fitness table as float values. Quantized tables are expanded into a new array
+	 * @return - locus-major fitness values [N * pow(2,K+1)]
+	 */
+	private float[] getFitnessTable() {
+		if(fitness_table != null || quantized_table == null) return fitness_table;
+		float table[] = new float[quantized_table.length];
+		for(int c = 0; c < table.length; c++) table[c] = (float) (quant_min + quantized_table[c] * quant_scale);
+		return table;
+	}
+
+	/**
+	 * Encode the fitness of a genome on a quantized landscape as a 16-bit code, for populations that hold fitness values
+	 * as codes. Code 0 is never returned, so it can mark genomes that have not been evaluated. Codes span the range of
+	 * the table values in 65534 steps, so decoding adds an error of at most 1.00002 * getQuantizationError()
+	 * @param fitness - fitness of a genome on this landscape
+	 * @return - code [1,65535] for the fitness
+	 */
+	char quantizeFitness(float fitness) {
+		long code = 1 + Math.round((fitness - quant_min) / (quant_scale * QUANT_MAX / (QUANT_MAX - 1)));
+		return (char) Math.max(1, Math.min(QUANT_MAX, code));
+	}
+
+	/**
+	 * Decode a fitness code returned by quantizeFitness()
+	 * @param code - code [1,65535] of the fitness, or 0 for genomes that have not been evaluated
+	 * @return - fitness value, or 0 if the code is 0
+	 */
+	float dequantizeFitness(char code) {
+		if(code == 0) return 0;
+		return (float) (quant_min + (code - 1) * (quant_scale * QUANT_MAX / (QUANT_MAX - 1)));
+	}
+
+	/**
+	 * Set the number of threads used to locate peaks in, or materialize, landscapes
+	 * @param nThreads - number of threads to use. A value of 1 uses the serial algorithms
+	 */
+	public static synchronized void setThreads(int nThreads) {
+		if(nThreads < 1) throw new RuntimeException("Number of threads must be > 0 found "+nThreads);
+		if(nThreads != threads && pool != null){
+			pool.shutdown();
+			pool = null;
+		}
+		threads = nThreads;
+		return;
+	}
+
+	/**
+	 * Get the number of threads used to locate peaks in, or materialize, landscapes
+	 * @return - number of threads
+	 */
+	public static int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the memory ceiling used when locating peaks. If the fitness table for all genomes does not fit in this memory,
+	 * peaks are located with a slower search whose memory is bounded by the ceiling
+	 * @param bytes - memory ceiling in bytes
+	 */
+	public static void setPeakMemory(long bytes) {
+		if(bytes <= 0) throw new RuntimeException("Peak memory must be > 0 found "+bytes);
+		peakMemory = bytes;
+		return;
+	}
+
+	/**
+	 * Run a task for each block in [0, blocks) on the landscape thread pool, and wait for all blocks to complete
+	 * @param blocks - number of blocks
+	 * @param task - task to run for each block
+	 */
+	private static void forEachBlock(int blocks, IntConsumer task) {
+		if(threads == 1){
+			for(int b = 0; b < blocks; b++) task.accept(b);
+			return;
+		}
+		ForkJoinPool p;
+		synchronized(Landscape.class){
+			if(pool == null) pool = new ForkJoinPool(threads);
+			p = pool;
+		}
+		p.invoke(new BlockTask(task, 0, blocks));
+		return;
+	}
+
+	/**
+	 * Fork-join task to run a block task over a range of blocks
+	 */
+	private static class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** task to run on each block */
+		private final IntConsumer task;
+		/** first block in the range */
+		private final int from;
+		/** one past the last block in the range */
+		private final int to;
+
+		/**
+		 * Create a task for a range of blocks
+		 * @param task - task to run on each block
+		 * @param from - first block in the range
+		 * @param to - one past the last block in the range
+		 */
+		BlockTask(IntConsumer task, int from, int to) {
+			this.task = task;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= 1){
+				if(to > from) task.accept(from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new BlockTask(task, from, mid), new BlockTask(task, mid, to));
+			return;
+		}
+	}
+
 	/**
 	 * Get the value of fitness for a genome for this landscape
 	 * @param value - value of genome to be evaluated
 	 * @return - fitness value of the genome
 	 */
 	public float getFitness(int value) {
+		if(dense_fitness != null) return dense_fitness[value];
+		return getFitness((long) value);
+	}
+
+	/**
+	 * Get the value of fitness for a genome for this landscape. Genomes of up to 63 bits are supported
+	 * @param value - value of genome to be evaluated
+	 * @return - fitness value of the genome
+	 */
+	public float getFitness(long value) {
+		if(dense_fitness != null) return dense_fitness[(int) value];
+		if(evaluator != null) return evaluator.getFitness(value);
 		float fitness = 0;
-		for(int i = 0; i < N; i++){
-			// gather the dependencies for each bit location
-			int gene = 0;
-			for(int j = K; j >=0; j--){
-				gene <<= 1;
-				if((value & (1L << epistasis_locations[i][j])) > 0){
-					gene |= 1;
+		if(quantized_table != null){
+			// codes are summed exactly, so the result does not depend on the order of the loci
+			long sum = 0;
+			for(int i = 0, row = 0; i < N; i++, row += kMax) sum += quantized_table[row + getGene(i, value)];
+			return dequantizeMean(sum);
+		}
+		if(virtual_table != null){
+			for(int i = 0; i < N; i++) fitness += virtual_table.get(i, getGene(i, value));
+			fitness /= N;
+			return fitness;
+		}
+		for(int i = 0, row = 0; i < N; i++, row += kMax){
+			// add the fitness value for the bit location
+			fitness += fitness_table[row + getGene(i, value)];
+		}
+		// overall fitness is the average of the N locations
+		fitness /= N;
+		return fitness;
+	}
+
+	/**
+	 * Check if another landscape has the same epistasis table as this landscape, as landscapes correlated with
+	 * an original landscape do. Such landscapes can be evaluated together with getFitness(long, Landscape, float[], int)
+	 * @param other - landscape to check
+	 * @return - true if both landscapes read the same gene indices for every genome
+	 */
+	public boolean sharesEpistasis(Landscape other) {
+		return other == this || (other.N == N && other.K == K && Arrays.deepEquals(epistasis_locations, other.epistasis_locations));
+	}
+
+	/**
+	 * Get the fitness of a genome on this landscape and on another landscape with the same epistasis table. The gene
+	 * index of each locus is computed once, and read from both fitness tables. Fitness values are identical to those
+	 * from getFitness() on each landscape
+	 * @param value - value of genome to be evaluated
+	 * @param other - landscape that shares the epistasis table of this landscape (see sharesEpistasis())
+	 * @param otherFitness - array receiving the fitness of the genome on the other landscape
+	 * @param index - index in otherFitness for the fitness value
+	 * @return - fitness value of the genome on this landscape
+	 */
+	public float getFitness(long value, Landscape other, float otherFitness[], int index) {
+		if(other == this || dense_fitness != null || other.dense_fitness != null || fitness_table == null || other.fitness_table == null){
+			otherFitness[index] = other.getFitness(value);
+			return getFitness(value);
+		}
+		if(other.N != N || other.K != K) throw new RuntimeException("Landscapes do not share an epistasis table");
+		float otherTable[] = other.fitness_table;
+		float fitness = 0;
+		float shared = 0;
+		for(int i = 0, row = 0; i < N; i++, row += kMax){
+			int gene = getGene(i, value);
+			fitness += fitness_table[row + gene];
+			shared += otherTable[row + gene];
+		}
+		otherFitness[index] = shared / N;
+		return fitness / N;
+	}
+
+	/**
+	 * Get the fitness of a genome derived from a parent genome by flipping some bits. Only the loci that
+	 * read a flipped bit are re-evaluated, so a single bit flip costs O(K) rather than O(N*K).
+	 * Note that the result is accumulated from the parent fitness, so it may differ from getFitness() in the
+	 * last bits of the float value. On quantized landscapes the offspring is evaluated in full from the integer
+	 * codes of its table values, so quantization errors do not accumulate along a lineage
+	 * @param parent - value of the parent genome
+	 * @param parentFitness - fitness of the parent genome on this landscape
+	 * @param flippedMask - mask containing the bits flipped in the parent to obtain the offspring
+	 * @return - fitness value of the offspring (parent ^ flippedMask)
+	 */
+	public float getFitnessDelta(int parent, float parentFitness, int flippedMask) {
+		return getFitnessDelta((long) parent, parentFitness, (long) flippedMask);
+	}
+
+	/**
+	 * Get the fitness of a genome of up to 63 bits derived from a parent genome by flipping some bits.
+	 * See getFitnessDelta(int, float, int)
+	 * @param parent - value of the parent genome
+	 * @param parentFitness - fitness of the parent genome on this landscape
+	 * @param flippedMask - mask containing the bits flipped in the parent to obtain the offspring
+	 * @return - fitness value of the offspring (parent ^ flippedMask)
+	 */
+	public float getFitnessDelta(long parent, float parentFitness, long flippedMask) {
+		if(flippedMask == 0) return parentFitness;
+		long offspring = parent ^ flippedMask;
+		if(dense_fitness != null) return dense_fitness[(int) offspring];
+		// if most loci are affected, a full evaluation is cheaper
+		if(quantized_table != null || Long.bitCount(flippedMask) * (K+1) >= N) return getFitness(offspring);
+		double fitness = (double) parentFitness * N;
+		for(long mask = flippedMask; mask != 0; mask &= mask-1){
+			int bit = Long.numberOfTrailingZeros(mask);
+			long lower = (1L << bit) - 1;
+			for(int i : dependents[bit]){
+				// each affected locus is evaluated only once, at the lowest flipped bit it reads
+				if((dependency_mask[i] & flippedMask & lower) != 0) continue;
+				fitness += entry(i, getGene(i, offspring)) - entry(i, getGene(i, parent));
+			}
+		}
+		return (float) (fitness / N);
+	}
+
+	/**
+	 * Get the fitness of a batch of genomes. The batch is evaluated locus by locus, so the gather tables and fitness
+	 * values of a locus are walked once for a block of genomes rather than once per genome. Fitness values are
+	 * identical to those from getFitness()
+	 * @param genomes - genomes to evaluate
+	 * @param from - index of the first genome to evaluate
+	 * @param to - index one past the last genome to evaluate
+	 * @param out - array receiving the fitness of genomes[j] in out[j], for from &lt;= j &lt; to
+	 */
+	public void getFitness(int genomes[], int from, int to, float out[]) {
+		if(from < 0 || from > to || to > genomes.length || to > out.length) {
+			throw new RuntimeException("Illegal batch ["+from+","+to+") for "+genomes.length+" genomes");
+		}
+		if(dense_fitness != null){
+			for(int j = from; j < to; j++) out[j] = dense_fitness[genomes[j]];
+			return;
+		}
+		for(int j = from; j < to; j += BATCH){
+			evaluateBatch(genomes, j, Math.min(to, j + BATCH), out);
+		}
+		return;
+	}
+
+	/**
+	 * Get the fitness of a contiguous range of genomes. See getFitness(int[], int, int, float[])
+	 * @param start - first genome in the range
+	 * @param count - number of genomes in the range
+	 * @param out - array receiving the fitness of genome (start+j) in out[j], for 0 &lt;= j &lt; count
+	 */
+	public void getFitnessRange(int start, int count, float out[]) {
+		if(start < 0 || count < 0 || count > out.length || (N < Integer.SIZE && (long) start + count > maxGenomes)) {
+			throw new RuntimeException("Illegal genome range "+start+" + "+count+" for N = "+N);
+		}
+		if(dense_fitness != null){
+			System.arraycopy(dense_fitness, start, out, 0, count);
+			return;
+		}
+		int genomes[] = new int[Math.min(count, BATCH)];
+		float values[] = new float[genomes.length];
+		for(int j = 0; j < count; j += BATCH){
+			int n = Math.min(count - j, BATCH);
+			for(int k = 0; k < n; k++) genomes[k] = start + j + k;
+			evaluateBatch(genomes, 0, n, values);
+			System.arraycopy(values, 0, out, j, n);
+		}
+		return;
+	}
+
+	/**
+	 * Evaluate a block of at most BATCH genomes locus by locus. The fitness of each genome is summed in locus order,
+	 * as in getFitness(), so the results are bit-identical
+	 * @param genomes - genomes to evaluate
+	 * @param from - index of the first genome to evaluate
+	 * @param to - index one past the last genome to evaluate
+	 * @param out - array receiving the fitness of genomes[j] in out[j]
+	 */
+	private void evaluateBatch(int genomes[], int from, int to, float out[]) {
+		if(evaluator != null || fitness_table == null){
+			for(int j = from; j < to; j++) out[j] = getFitness((long) genomes[j]);
+			return;
+		}
+		for(int j = from; j < to; j++) out[j] = 0;
+		for(int i = 0, row = 0; i < N; i++, row += kMax){
+			int shift[] = gather_shift[i];
+			int table[] = gather_table[i];
+			for(int j = from; j < to; j++){
+				long genome = genomes[j];
+				int gene = 0;
+				for(int k = 0; k < shift.length; k++){
+					gene |= table[(k << 8) | ((int) (genome >>> shift[k]) & 0xff)];
 				}
+				out[j] += fitness_table[row + gene];
 			}
+		}
+		for(int j = from; j < to; j++) out[j] /= N;
+		return;
+	}
+
+	/**
+	 * Replace the evaluator of this landscape with a class generated for its epistasis table, with the loop over the
+	 * loci unrolled and the epistasis locations as constants. Generation takes a few milliseconds, so it is worthwhile
+	 * when the landscape is evaluated many times. Fitness values are unchanged
+	 */
+	public void compileEvaluator() {
+		if(N >= Long.SIZE){
+			System.out.println("*Warning* - Evaluators are only generated for N < "+Long.SIZE);
+			return;
+		}
+		if(fitness_table == null){
+			System.out.println("*Warning* - Evaluators are not generated for virtual or quantized landscapes");
+			return;
+		}
+		evaluator = EvaluatorGenerator.generate(N, epistasis_locations, fitness_table);
+		return;
+	}
+
+	/**
+	 * Get the evaluator used by this landscape for genomes of up to 63 bits
+	 * @return - evaluator specialized to the epistasis table, or null if the gather tables are used
+	 */
+	public FitnessEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Get the bit-sliced evaluator for this landscape, which evaluates 64 genomes per pass over the loci
+	 * @return - bit-sliced evaluator
+	 */
+	public synchronized BitSlicedEvaluator getBitSlicedEvaluator() {
+		if(fitness_table == null) throw new RuntimeException("Bit-sliced evaluation requires a float fitness table");
+		if(bit_sliced == null) bit_sliced = new BitSlicedEvaluator(N, epistasis_locations, fitness_table);
+		return bit_sliced;
+	}
+
+	/**
+	 * Get the value of fitness for a multi-word genome for this landscape. Genomes of any length up to MAX_N are supported
+	 * @param genome - genome to be evaluated. It must have N bits
+	 * @return - fitness value of the genome
+	 */
+	public float getFitness(Genome genome) {
+		float fitness = 0;
+		for(int i = 0; i < N; i++){
 			// add the fitness value for the bit location
-			fitness += fitness_table[gene][i];
+			fitness += entry(i, getGene(i, genome.words));
 		}
 		// overall fitness is the average of the N locations
 		fitness /= N;
 		return fitness;
 	}
 
+	/**
+	 * Get the fitness of the genome obtained by flipping a single bit in a multi-word parent genome. Only the loci that
+	 * read the bit are re-evaluated, at a cost of O(K). The parent is not modified.
+	 * See getFitnessDelta(int, float, int)
+	 * @param parent - parent genome
+	 * @param parentFitness - fitness of the parent genome on this landscape
+	 * @param bit - bit [0,N) flipped in the parent to obtain the offspring
+	 * @return - fitness value of the offspring
+	 */
+	public float getFitnessDelta(Genome parent, float parentFitness, int bit) {
+		if(quantized_table != null){
+			Genome offspring = new Genome(parent);
+			offspring.flip(bit);
+			return getFitness(offspring);
+		}
+		double fitness = (double) parentFitness * N;
+		int loci[] = dependents[bit];
+		int genes[] = dependent_genes[bit];
+		for(int d = 0; d < loci.length; d++){
+			int i = loci[d];
+			int gene = getGene(i, parent.words);
+			fitness += entry(i, gene ^ genes[d]) - entry(i, gene);
+		}
+		return (float) (fitness / N);
+	}
+
+	/**
+	 * Get the fitness of a multi-word offspring genome that differs from its parent in a few bits.
+	 * See getFitnessDelta(int, float, int)
+	 * @param parent - parent genome
+	 * @param parentFitness - fitness of the parent genome on this landscape
+	 * @param offspring - offspring genome
+	 * @param bits - distinct bits flipped in the parent to obtain the offspring
+	 * @param count - number of flipped bits held in bits[]
+	 * @return - fitness value of the offspring
+	 */
+	public float getFitnessDelta(Genome parent, float parentFitness, Genome offspring, int bits[], int count) {
+		if(count == 0) return parentFitness;
+		if(quantized_table != null) return getFitness(offspring);
+		if(count == 1) return getFitnessDelta(parent, parentFitness, bits[0]);
+		// if most loci are affected, a full evaluation is cheaper
+		if(count * (K+1) >= N) return getFitness(offspring);
+		double fitness = (double) parentFitness * N;
+		for(int f = 0; f < count; f++){
+			int bit = bits[f];
+			for(int i : dependents[bit]){
+				// each affected locus is evaluated only once, at the lowest flipped bit it reads
+				if(readsFlippedBit(i, bit, parent, offspring)) continue;
+				fitness += entry(i, getGene(i, offspring.words)) - entry(i, getGene(i, parent.words));
+			}
+		}
+		return (float) (fitness / N);
+	}
+
+	/**
+	 * Check if a locus reads a genome bit below a given bit that differs between two genomes
+	 * @param i - locus in the genome
+	 * @param bit - bit being evaluated
+	 * @param parent - parent genome
+	 * @param offspring - offspring genome
+	 * @return - true if the locus reads a lower bit that differs between parent and offspring
+	 */
+	private boolean readsFlippedBit(int i, int bit, Genome parent, Genome offspring) {
+		for(int loc : epistasis_locations[i]){
+			if(loc < bit && parent.get(loc) != offspring.get(loc)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Materialize the landscape by computing the fitness of all pow(2,N) genomes. Genomes are evaluated with a
+	 * parallel scan, after which getFitness() is a single array load. If a dense file is given and holds
+	 * a table for this landscape, the table is read from it; otherwise the computed table is written to it
+	 * @param denseFile - file to read or persist the dense table, if any
+	 */
+	public void materialize(String denseFile) {
+		if(dense_fitness != null) return;
+		if(N > MAX_DENSE_N) throw new RuntimeException("Dense landscapes require N <= "+MAX_DENSE_N+" found "+N);
+		float table[] = denseFile != null ? readDenseFitness(denseFile) : null;
+		if(table == null){
+			float values[] = new float[maxGenomes];
+			parallelScan((genome, fitness) -> values[genome] = fitness);
+			table = values;
+			if(denseFile != null) writeDenseFitness(denseFile, table);
+		}
+		dense_fitness = table;
+		return;
+	}
+
+	/**
+	 * Check if this landscape has been materialized
+	 * @return - true if the fitness of all genomes is held in a dense table
+	 */
+	public boolean isMaterialized() {
+		return dense_fitness != null;
+	}
+
+	/**
+	 * Get the dense fitness table for this landscape. The table is shared, and must not be modified
+	 * @return - fitness values indexed by genome, or null if the landscape has not been materialized
+	 */
+	public float[] getDenseFitness() {
+		return dense_fitness;
+	}
+
+	/**
+	 * Write a dense fitness table to a file
+	 * @param fileName - name of the file
+	 * @param table - fitness values indexed by genome
+	 */
+	private void writeDenseFitness(String fileName, float table[]) {
+		try (FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(DENSE_HEADER);
+			header.putInt(DENSE_MAGIC).putInt(N).putInt(K).putLong(seed).flip();
+			while(header.hasRemaining()) channel.write(header);
+			ByteBuffer buffer = ByteBuffer.allocate(DENSE_BLOCK * Float.BYTES);
+			for(int g = 0; g < maxGenomes; g += DENSE_BLOCK){
+				buffer.clear();
+				buffer.asFloatBuffer().put(table, g, Math.min(DENSE_BLOCK, maxGenomes - g));
+				buffer.limit(Math.min(DENSE_BLOCK, maxGenomes - g) * Float.BYTES);
+				while(buffer.hasRemaining()) channel.write(buffer);
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to write dense landscape "+fileName+" "+e.getLocalizedMessage());
+		}
+		return;
+	}
+
+	/**
+	 * Read a dense fitness table from a file. The table is only accepted if its header matches this landscape, and
+	 * a sample of its values matches the computed fitness
+	 * @param fileName - name of the file
+	 * @return - fitness values indexed by genome, or null if the file is missing or does not match this landscape
+	 */
+	private float[] readDenseFitness(String fileName) {
+		File file = new File(fileName);
+		if(!file.exists() || file.length() != DENSE_HEADER + (long) maxGenomes * Float.BYTES) return null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, DENSE_HEADER);
+			if(header.getInt() != DENSE_MAGIC || header.getInt() != N || header.getInt() != K || header.getLong() != seed){
+				System.out.println("Ignoring dense landscape "+fileName+". It does not match the landscape");
+				return null;
+			}
+			float table[] = new float[maxGenomes];
+			for(int g = 0; g < maxGenomes; g += DENSE_REGION){
+				int length = Math.min(DENSE_REGION, maxGenomes - g);
+				FloatBuffer region = channel.map(MapMode.READ_ONLY, DENSE_HEADER + (long) g * Float.BYTES, (long) length * Float.BYTES).asFloatBuffer();
+				region.get(table, g, length);
+			}
+			// spot check the table against the landscape
+			for(int i = 0; i <= 64; i++){
+				int g = (int) Math.min(maxGenomes - 1L, (long) i * maxGenomes / 64);
+				if(Float.floatToIntBits(table[g]) != Float.floatToIntBits(getFitness(g))){
+					System.out.println("Ignoring dense landscape "+fileName+". Fitness values do not match the landscape");
+					return null;
+				}
+			}
+			return table;
+		} catch (IOException e) {
+			System.out.println("Unable to read dense landscape "+fileName+" "+e.getLocalizedMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Get the gene index read by a locus in a genome
+	 * @param i - locus in the genome
+	 * @param value - value of the genome
+	 * @return - gene index [0,pow(2,K+1)) into the fitness table
+	 */
+	private int getGene(int i, long value) {
+		if(adjacent != null) return adjacent.getGene(i, value);
+		// gather the dependencies for the bit location, one genome byte at a time
+		int shift[] = gather_shift[i];
+		int table[] = gather_table[i];
+		int gene = 0;
+		for(int k = 0; k < shift.length; k++){
+			gene |= table[(k << 8) | ((int) (value >>> shift[k]) & 0xff)];
+		}
+		return gene;
+	}
+
+	/**
+	 * Get the gene index read by a locus in a multi-word genome
+	 * @param i - locus in the genome
+	 * @param words - words of the genome
+	 * @return - gene index [0,pow(2,K+1)) into the fitness table
+	 */
+	private int getGene(int i, long words[]) {
+		int shift[] = gather_shift[i];
+		int table[] = gather_table[i];
+		int gene = 0;
+		for(int k = 0; k < shift.length; k++){
+			// shifts of a long only use the low 6 bits, which locate the byte in its word
+			gene |= table[(k << 8) | ((int) (words[shift[k] >>> 6] >>> shift[k]) & 0xff)];
+		}
+		return gene;
+	}
+
 	/**
 	 * Get the fitness of the tallest peak in the landscape
 	 * @return - fitness of the tallest peak. Returns -Float.MAXVALUE if no peaks are available
@@ -279,15 +1462,20 @@ public class Landscape {
 	 * Get all peaks available for this landscape
 	 * @return - Map containing genome {genome,peakheight}
 	 */
-	public HashMap<Integer,Float> getPeaks(){
+	public PeakMap getPeaks(){
 		return peaks;
 	}
 
 	/**
-	 * Write out the landscape to a file
+	 * Write out the landscape to a file. Files whose name ends in BINARY_SUFFIX are written in the binary format,
+	 * all others are exported as text
 	 * @param fileName - name of the file
 	 */
 	public void writeLandscape(String fileName){
+		if(fileName.endsWith(BINARY_SUFFIX)){
+			writeBinaryLandscape(fileName);
+			return;
+		}
 		try {
 			PrintStream out = new PrintStream(new File(fileName));
 			out.println(Configuration.banner);
@@ -301,17 +1489,21 @@ public class Landscape {
 				}
 				out.print("\n");
 			}
-			out.println("# Fitness Table[pow(2,K+1)][N]:");
-			for(int i=0; i < kMax; i++){
+			if(virtual_table != null){
+				out.println("# Fitness Table: virtual, computed from the seed");
+			} else {
+				out.println("# Fitness Table[pow(2,K+1)][N]:");
+			}
+			for(int i=0; virtual_table == null && i < kMax; i++){
 				for(int j = 0; j < N; j++){
-					out.print(String.format("%f ",fitness_table[i][j]));
+					out.print(String.format("%f ",entry(j, i)));
 				}
 				out.print("\n");
 			}
 			if(peaks.size() > 0){
 				out.println("# Fitness Peaks "+peaks.size());
-				for(Integer key : peaks.keySet()){
-					out.println(String.format("%d %f", key,peaks.get(key)));
+				for(int p = 0; p < peaks.size(); p++){
+					out.println(String.format("%d %f", peaks.getGenome(p),peaks.getFitness(p)));
 				}
 			}
 			out.close();
@@ -321,10 +1513,123 @@ public class Landscape {
 	}
 
 	/**
-	 * Read the population values from a file
+	 * Write out the landscape to a file in the binary format. The file holds a header (magic, version, N, K, seed), the
+	 * epistasis table [N][K+1], the fitness table [pow(2,K+1)][N], and the peak count followed by {genome, fitness} for
+	 * each peak in genome order. All values are big-endian, and fitness values are stored without loss of precision
+	 * @param fileName - name of the file
+	 */
+	public void writeBinaryLandscape(String fileName){
+		if(virtual_table != null){
+			System.out.println("Virtual landscapes cannot be written in the binary format "+fileName);
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))) {
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(BINARY_VERSION);
+			out.writeInt(N);
+			out.writeInt(K);
+			out.writeLong(seed);
+			for(int i = 0; i < N; i++){
+				for(int j = 0; j <= K; j++){
+					out.writeInt(epistasis_locations[i][j]);
+				}
+			}
+			for(int i = 0; i < kMax; i++){
+				for(int j = 0; j < N; j++){
+					out.writeFloat(entry(j, i));
+				}
+			}
+			out.writeInt(peaks.size());
+			for(int p = 0; p < peaks.size(); p++){
+				out.writeInt(peaks.getGenome(p));
+				out.writeFloat(peaks.getFitness(p));
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to write landscape "+fileName+" "+e.getLocalizedMessage());
+		}
+		return;
+	}
+
+	/**
+	 * Check if a file holds a binary landscape
+	 * @param fileName - name of the file
+	 * @return - true if the file starts with the binary landscape magic number
+	 */
+	public static boolean isBinaryLandscape(String fileName){
+		File file = new File(fileName);
+		if(!file.isFile() || file.length() < BINARY_HEADER) return false;
+		try (DataInputStream inp = new DataInputStream(new FileInputStream(file))) {
+			return inp.readInt() == BINARY_MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read the landscape from a binary landscape file. The file is memory mapped, and the fitness table is
+	 * transferred with bulk copies rather than parsed
+	 * @return - true if successful, false if read failed
+	 */
+	private boolean readBinaryLandscape() {
+		try (FileChannel channel = FileChannel.open(new File(landscapeFile).toPath(), StandardOpenOption.READ)) {
+			long tableOffset = BINARY_HEADER + (long) N * (K+1) * Integer.BYTES;
+			long peakOffset = tableOffset + (long) kMax * N * Float.BYTES;
+			if(channel.size() < peakOffset + Integer.BYTES) throw new IOException("Illegal Landscape file "+landscapeFile+" (truncated)");
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, tableOffset);
+			if(header.getInt() != BINARY_MAGIC) throw new IOException("Illegal Landscape file "+landscapeFile);
+			int version = header.getInt();
+			if(version != BINARY_VERSION) throw new IOException("Unsupported Landscape file "+landscapeFile+" version "+version);
+			int n = header.getInt(), k = header.getInt();
+			if(n != N || k != K) throw new IOException("Illegal Landscape file "+landscapeFile+" Expected N = "+N+" K = "+K+" found N = "+n+" K = "+k);
+			header.getLong();	// seed used to create the landscape
+			// read in the epistasis locations
+			for(int i = 0; i < N; i++){
+				for(int j = 0; j <= K; j++){
+					int loc = header.getInt();
+					if(loc < 0 || loc >= N) throw new IOException("Illegal Landscape file "+landscapeFile+" epistasis location "+loc);
+					epistasis_locations[i][j] = loc;
+				}
+			}
+			// read in the fitness values, mapping at most 1 GB of whole rows at a time. Each row holds one gene index for all loci
+			int rowsPerRegion = Math.max(1, (1 << 30) / (N * Float.BYTES));
+			float row[] = new float[N];
+			for(int i = 0; i < kMax; i += rowsPerRegion){
+				int rows = Math.min(rowsPerRegion, kMax - i);
+				FloatBuffer region = channel.map(MapMode.READ_ONLY, tableOffset + (long) i * N * Float.BYTES, (long) rows * N * Float.BYTES).asFloatBuffer();
+				for(int r = 0; r < rows; r++){
+					region.get(row);
+					for(int j = 0; j < N; j++) fitness_table[j * kMax + i + r] = row[j];
+				}
+			}
+			// read in the fitness peaks
+			int nPeaks = channel.map(MapMode.READ_ONLY, peakOffset, Integer.BYTES).getInt();
+			if(nPeaks < 0 || channel.size() < peakOffset + Integer.BYTES + (long) nPeaks * (Integer.BYTES + Float.BYTES)){
+				throw new IOException("Illegal Landscape file "+landscapeFile+" (truncated peaks)");
+			}
+			ByteBuffer peakBuffer = channel.map(MapMode.READ_ONLY, peakOffset + Integer.BYTES, (long) nPeaks * (Integer.BYTES + Float.BYTES));
+			for(int p = 0; p < nPeaks; p++){
+				int g = peakBuffer.getInt();
+				float f = peakBuffer.getFloat();
+				if(maxPeak < f) maxPeak = f;
+				if(minPeak > f) minPeak = f;
+				peaks.put(g, f);
+			}
+			peaks.trim();
+			compileEpistasis();
+			return true;
+		} catch (IOException e) {
+			System.out.println(e.getLocalizedMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Read the landscape from a file. Binary landscape files are recognized by their magic number; all other files
+	 * are read as text
 	 * @return - true if successful, false if read failed
 	 */
 	public boolean readLandscape() {
+		if(landscapeFile != null && isBinaryLandscape(landscapeFile)) return readBinaryLandscape();
 		if(landscapeFile != null){
 			try {
 				BufferedReader inp = new BufferedReader(new InputStreamReader(new FileInputStream(new File(landscapeFile))));
@@ -362,7 +1667,7 @@ public class Landscape {
 						throw new IOException("Unable to read "+landscapeFile);
 					}
 					for(int j = 0; j < N; j++){
-						fitness_table[i][j] = Float.parseFloat(parts[j]);
+						fitness_table[j * kMax + i] = Float.parseFloat(parts[j]);
 					}
 					i++;
 				}
@@ -377,13 +1682,17 @@ public class Landscape {
 						inp.close();
 						throw new IOException("Illegal Landscape file "+landscapeFile+" Expected 2 values found "+parts.length);
 					}
-					Integer g = Integer.valueOf(parts[0]);
-					Float f = Float.valueOf(parts[1]);
+					int g = Integer.parseInt(parts[0]);
+					float f = Float.parseFloat(parts[1]);
 					if(maxPeak < f) maxPeak = f;
 					if(minPeak > f) minPeak = f;
 					peaks.put(g, f);
 				}
+				peaks.trim();
 				inp.close();
+				// compile, and possibly quantize, only once the whole file is read, so a failed read leaves the
+				// fitness table in place for the landscape to be regenerated
+				compileEpistasis();
 				return true;
 			} catch (IOException e) {
 				System.out.println(e.getLocalizedMessage());
@@ -401,11 +1710,15 @@ public class Landscape {
 	 * -s seed - random number generator seed<br>
 	 * -e [random | adjacent] - epistasis type<br>
 	 * -f [true | false] - locate fitness peaks if true<br>
+	 * -t threads - number of threads used to locate peaks<br>
+	 * -m megabytes - memory ceiling for locating peaks<br>
+	 * -r [true | false] - generate the landscape from counter-based random streams if true<br>
+	 * -x fileName - export the landscape to a text file<br>
 	 */
 	public static void main(String[] args) {
 		// show help and exit if program called with -h
 		if(args.length == 0 || args[0].startsWith("-h")) {
-			System.out.println("Use Landscape -N N -K K -L landscapeFile [-s seed] [-e [adjacent | random]] [-f [true|false]");
+			System.out.println("Use Landscape -N N -K K -L landscapeFile [-s seed] [-e [adjacent | random]] [-f [true|false]] [-t threads] [-m megabytes] [-r [true|false]] [-x exportFile]");
 			return;
 		}
 		// program defaults
@@ -415,6 +1728,7 @@ public class Landscape {
 		Epistasis e = Epistasis.ADJACENT;
 		String landscapeFile = "landscape.txt";
 		boolean findPeaks = true;
+		String exportFile = null;
 		// now process arguments given
 		for(int i = 0; i < args.length; i += 2){
 			switch(args[i].toLowerCase()){
@@ -436,6 +1750,18 @@ public class Landscape {
 			case "-f":
 				findPeaks = Boolean.valueOf(args[i+1]);
 				break;
+			case "-t":
+				setThreads(Integer.valueOf(args[i+1]));
+				break;
+			case "-m":
+				setPeakMemory(Long.valueOf(args[i+1]) << 20);
+				break;
+			case "-r":
+				setStreamGeneration(Boolean.valueOf(args[i+1]));
+				break;
+			case "-x":
+				exportFile = args[i+1];
+				break;
 			default:
 				System.out.println("Skipped unknown option "+args[i]+" "+args[i+1]);
 				break;
@@ -445,8 +1771,8 @@ public class Landscape {
 		System.out.println(Configuration.copyright);
 		System.out.println("N = "+N+ " K = "+K);
 		long time = System.currentTimeMillis();
-		@SuppressWarnings("unused")
 		Landscape landscape = new Landscape(N,K,e,seed,landscapeFile,findPeaks);
+		if(exportFile != null) landscape.writeLandscape(exportFile);
 		time = System.currentTimeMillis()-time;
 		System.out.println("Done "+landscapeFile+" in "+time+" ms");
 		return;
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Process-wide registry of landscapes with located peaks. Landscapes created from the same (N, K, epistasis, seed,
+ * landscape file, generation method), or correlated with the same landscape using the same (rho, seed, landscape file), are created once
+ * and shared by all simulations in the JVM. Landscapes are only shared if they are reproducible, i.e., created with a
+ * non-zero seed. Shared landscapes must be treated as immutable; materialize() and compileEvaluator() may be called on
+ * them, since they do not change fitness values.
+ * <p>
+ * If a cache directory is set, landscapes that are not read from a landscape file are also kept in the directory in
+ * the binary format, so a later run loads the landscape and its peaks instead of locating them again
+ * @author Sharad Singhal
+ */
+public class LandscapeRegistry {
+	/** Landscapes registered by key */
+	private static final HashMap<String,Landscape> landscapes = new HashMap<String,Landscape>();
+	/** Keys of registered landscapes, used to key landscapes correlated with them */
+	private static final IdentityHashMap<Landscape,String> keys = new IdentityHashMap<Landscape,String>();
+	/** Directory holding cached landscapes, or null if landscapes are not cached on disk */
+	private static File cacheDirectory = null;
+
+	/**
+	 * Set the directory used to cache landscapes on disk. The directory is created if needed
+	 * @param directory - name of the cache directory, or null to disable the disk cache
+	 */
+	public static synchronized void setCacheDirectory(String directory) {
+		if(directory == null){
+			cacheDirectory = null;
+			return;
+		}
+		File dir = new File(directory);
+		if(!dir.isDirectory() && !dir.mkdirs()){
+			System.out.println("Unable to create landscape cache directory "+directory);
+			return;
+		}
+		cacheDirectory = dir;
+		return;
+	}
+
+	/**
+	 * Get a landscape with located peaks, creating it if it has not been created before
+	 * @param N - N value for the landscape
+	 * @param K - K value for the landscape
+	 * @param e - Epistasis type to use
+	 * @param seed - seed for the random number generator. Landscapes with seed 0 are not shared
+	 * @param landscapeFile - landscape file to use, if any. See Landscape(int, int, Epistasis, long, String, boolean)
+	 * @return - landscape for the given parameters
+	 */
+	public static synchronized Landscape getLandscape(int N, int K, Epistasis e, long seed, String landscapeFile) {
+		if(seed == 0) return new Landscape(N, K, e, seed, landscapeFile, true);
+		String key = String.format("%d-%d-%s-%d", N, K, e.toString().toLowerCase(), seed);
+		if(Landscape.isStreamGeneration()) key += "-streams";
+		if(Landscape.isVirtualTables()) key += "-virtual";
+		if(Landscape.isQuantizedTables()) key += "-quantized";
+		if(landscapeFile != null) key += "-"+new File(landscapeFile).getAbsolutePath();
+		Landscape landscape = landscapes.get(key);
+		if(landscape == null){
+			// landscapes that are not read from a landscape file are read from, or written to, the cache
+			String cacheFile = landscapeFile == null ? getCacheFile(key) : null;
+			boolean cached = cacheFile != null && new File(cacheFile).isFile();
+			landscape = new Landscape(N, K, e, seed, cached ? cacheFile : landscapeFile, true);
+			if(cacheFile != null && !cached) landscape.writeBinaryLandscape(cacheFile);
+			register(key, landscape);
+		}
+		return landscape;
+	}
+
+	/**
+	 * Get a landscape correlated with another landscape, creating it if it has not been created before
+	 * @param orig - original landscape to use as the template
+	 * @param rho - correlation coefficient -1 &lt;= rho &lt;= 1
+	 * @param seed - random number seed for this landscape. Landscapes with seed 0 are not shared
+	 * @param landscapeFile - if given, generated landscape is written to this file
+	 * @return - landscape correlated with the original landscape
+	 */
+	public static synchronized Landscape getCorrelatedLandscape(Landscape orig, float rho, long seed, String landscapeFile) {
+		String origKey = keys.get(orig);
+		if(seed == 0 || origKey == null) return new Landscape(orig, rho, seed, landscapeFile);
+		String key = String.format("%s-rho%s-%d", origKey, Float.toString(rho), seed);
+		if(Landscape.isStreamGeneration()) key += "-streams";
+		if(landscapeFile != null) key += "-"+new File(landscapeFile).getAbsolutePath();
+		Landscape landscape = landscapes.get(key);
+		if(landscape == null){
+			// landscapes that are not read from a landscape file are read from, or written to, the cache
+			String cacheFile = landscapeFile == null ? getCacheFile(key) : null;
+			boolean cached = cacheFile != null && new File(cacheFile).isFile();
+			landscape = new Landscape(orig, rho, seed, cached ? cacheFile : landscapeFile);
+			if(cacheFile != null && !cached) landscape.writeBinaryLandscape(cacheFile);
+			register(key, landscape);
+		}
+		return landscape;
+	}
+
+	/**
+	 * Remove all landscapes from the registry. The disk cache is not changed
+	 */
+	public static synchronized void clear() {
+		landscapes.clear();
+		keys.clear();
+		return;
+	}
+
+	/**
+	 * Register a landscape
+	 * @param key - key for the landscape
+	 * @param landscape - landscape to register
+	 */
+	private static void register(String key, Landscape landscape) {
+		landscapes.put(key, landscape);
+		keys.put(landscape, key);
+		return;
+	}
+
+	/**
+	 * Get the cache file for a landscape. Landscapes derived from a landscape file are not cached, since the
+	 * file may change between runs. Virtual landscapes are not cached, since they have no fitness table to write
+	 * @param key - key for the landscape
+	 * @return - name of the cache file, or null if the landscape is not cached on disk
+	 */
+	private static String getCacheFile(String key) {
+		if(cacheDirectory == null || key.indexOf(File.separatorChar) >= 0 || key.contains("-virtual")) return null;
+		return new File(cacheDirectory, "nk-"+key+Landscape.BINARY_SUFFIX).getPath();
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.util.Arrays;
+
+/**
+ * Map from peak genomes to their fitness, held in sorted parallel int[] and float[] arrays.
+ * Peaks are indexed [0,size()) in genome order. A peak costs 8 bytes, rather than the boxed
+ * entries of a HashMap&lt;Integer,Float&gt;. The map is not thread-safe while it is being filled
+ * @author Sharad Singhal
+ */
+public class PeakMap {
+	/** genomes of the peaks, in genome order once sorted */
+	private int genomes[];
+	/** fitness of the peaks, parallel to genomes */
+	private float fitness[];
+	/** number of peaks in the map */
+	private int size = 0;
+	/** true if the genomes are known to be in strictly increasing order */
+	private boolean sorted = true;
+
+	/**
+	 * Create an empty peak map
+	 */
+	public PeakMap() {
+		this(16);
+		return;
+	}
+
+	/**
+	 * Create an empty peak map
+	 * @param capacity - initial capacity of the map
+	 */
+	public PeakMap(int capacity) {
+		genomes = new int[Math.max(1, capacity)];
+		fitness = new float[genomes.length];
+		return;
+	}
+
+	/**
+	 * Add a peak to the map. Peaks added in genome order are appended without further work.
+	 * If a genome is added more than once, only one of its values is kept
+	 * @param genome - genome of the peak
+	 * @param peakFitness - fitness of the peak
+	 */
+	public void put(int genome, float peakFitness) {
+		if(size == genomes.length){
+			int capacity = size < (Integer.MAX_VALUE >> 1) ? size << 1 : Integer.MAX_VALUE - 8;
+			genomes = Arrays.copyOf(genomes, capacity);
+			fitness = Arrays.copyOf(fitness, capacity);
+		}
+		if(size > 0 && genomes[size-1] >= genome) sorted = false;
+		genomes[size] = genome;
+		fitness[size++] = peakFitness;
+		return;
+	}
+
+	/**
+	 * Remove all peaks from the map
+	 */
+	public void clear() {
+		size = 0;
+		sorted = true;
+		return;
+	}
+
+	/**
+	 * Sort the map in genome order and release unused capacity. Called once the map has been filled
+	 */
+	public void trim() {
+		sort();
+		if(size < genomes.length){
+			genomes = Arrays.copyOf(genomes, Math.max(1, size));
+			fitness = Arrays.copyOf(fitness, genomes.length);
+		}
+		return;
+	}
+
+	/**
+	 * Get the number of peaks in the map
+	 * @return - number of peaks
+	 */
+	public int size() {
+		sort();
+		return size;
+	}
+
+	/**
+	 * Check if the map is empty
+	 * @return - true if there are no peaks in the map
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Get the genome of a peak
+	 * @param index - index of the peak [0,size()) in genome order
+	 * @return - genome of the peak
+	 */
+	public int getGenome(int index) {
+		sort();
+		if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Peak "+index+" size "+size);
+		return genomes[index];
+	}
+
+	/**
+	 * Get the fitness of a peak
+	 * @param index - index of the peak [0,size()) in genome order
+	 * @return - fitness of the peak
+	 */
+	public float getFitness(int index) {
+		sort();
+		if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Peak "+index+" size "+size);
+		return fitness[index];
+	}
+
+	/**
+	 * Find the index of a genome in the map
+	 * @param genome - genome to find
+	 * @return - index of the peak in genome order, or a negative value if the genome is not a peak
+	 */
+	public int indexOf(int genome) {
+		sort();
+		return Arrays.binarySearch(genomes, 0, size, genome);
+	}
+
+	/**
+	 * Check if a genome is a peak
+	 * @param genome - genome to check
+	 * @return - true if the genome is in the map
+	 */
+	public boolean containsGenome(int genome) {
+		return indexOf(genome) >= 0;
+	}
+
+	/**
+	 * Get the fitness of a peak genome
+	 * @param genome - genome to look up
+	 * @return - fitness of the peak, or Float.NaN if the genome is not a peak
+	 */
+	public float get(int genome) {
+		int index = indexOf(genome);
+		return index >= 0 ? fitness[index] : Float.NaN;
+	}
+
+	/**
+	 * Get the peaks ordered by height
+	 * @return - indices of the peaks in genome order, sorted from the tallest to the smallest peak.
+	 * Peaks of equal height are in genome order
+	 */
+	public int[] sortedByHeight() {
+		sort();
+		// sort keys combining the (order-preserving) fitness bits with the index of the peak
+		long keys[] = new long[size];
+		for(int i = 0; i < size; i++){
+			int bits = Float.floatToIntBits(fitness[i]);
+			if(bits < 0) bits ^= Integer.MAX_VALUE;
+			keys[i] = ((long) ~bits << 32) | i;
+		}
+		Arrays.sort(keys);
+		int order[] = new int[size];
+		for(int i = 0; i < size; i++) order[i] = (int) keys[i];
+		return order;
+	}
+
+	/**
+	 * Sort the peaks in genome order, if needed
+	 */
+	private void sort() {
+		if(sorted) return;
+		// sort keys combining the genome with the insertion index, so later duplicates follow earlier ones
+		long keys[] = new long[size];
+		for(int i = 0; i < size; i++) keys[i] = ((long) genomes[i] << 32) | i;
+		Arrays.sort(keys);
+		int newGenomes[] = new int[genomes.length];
+		float newFitness[] = new float[genomes.length];
+		int n = 0;
+		for(int i = 0; i < size; i++){
+			int genome = (int) (keys[i] >> 32);
+			// keep the last value added for a genome
+			if(n > 0 && newGenomes[n-1] == genome) n--;
+			newGenomes[n] = genome;
+			newFitness[n++] = fitness[(int) keys[i]];
+		}
+		genomes = newGenomes;
+		fitness = newFitness;
+		size = n;
+		sorted = true;
+		return;
+	}
+}
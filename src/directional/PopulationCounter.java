@@ -24,7 +24,6 @@ import java.io.PrintStream;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Iterator;
 
 /**
  * PopulationCounter - tracks populations by their counts
@@ -39,16 +38,28 @@ public class PopulationCounter implements Population {
 	private int maxGenomes;
 	/** bitset containing active genomes. Indexed by genome value */
 	private BitSet genomes;
-	/** bit set used as working set in the simulation. Indexed by genome value */
-	private BitSet workingSet;
+	/** active genomes in genome order, the genomes set in the genomes bitset */
+	private int active[];
+	/** number of genomes in active[] */
+	private int nActive = 0;
 	/** array containing genome counts in population. Indexed by genome value */
 	private int count[];
 	/** count of offspring during replication */
 	private int offspringCount[];
+	/** number of offspring produced at each one-bit neighbor of a genome */
+	private int neighbors[];
+	/** genomes with a non-zero offspring count during replication, in the order they were first reached */
+	private int touched[];
+	/** number of genomes in touched[] */
+	private int nTouched = 0;
 	/** fitness values of the genomes. Indexed by genome value */
-	private float fitness[];
+	private float fitness[] = null;
 	/** fitness values of the genomes under the shock landscape. Indexed by genome value */
-	private float shockFitness[];
+	private float shockFitness[] = null;
+	/** fitness values of the genomes as 16-bit codes, used instead of fitness for quantized landscapes. Indexed by genome value */
+	private char fitnessCodes[] = null;
+	/** fitness values of the genomes under the shock landscape as 16-bit codes, used instead of shockFitness for quantized landscapes */
+	private char shockFitnessCodes[] = null;
 	/** Genome size in bits */
 	private int N;
 	/** Trace writer to write the simulation trace to a file */
@@ -75,6 +86,16 @@ public class PopulationCounter implements Population {
 	private Landscape landscape;
 	/** Shock landscape being used */
 	private Landscape shockLandscape;
+	/** true if offspring fitness is evaluated incrementally from the parent */
+	private boolean incremental;
+	/** true if the replication and shock landscapes share an epistasis table, and are evaluated together */
+	private boolean paired;
+	/** true if fitness is the materialized fitness table of the replication landscape, which is shared and never written */
+	private boolean materialized;
+	/** true if shockFitness is the materialized fitness table of the shock landscape, which is shared and never written */
+	private boolean shockMaterialized;
+	/** maximum fitness of all genomes evaluated so far */
+	private float maxFit = 0;
 	
 	/**
 	 * Create a population counter
@@ -87,25 +108,38 @@ public class PopulationCounter implements Population {
 		maxGenomes = config.getMaxGenomes();
 		maxPopulation = config.getMaxPopulation();
 		alpha = config.getAlpha();
+		incremental = config.incrementalFitness();
 		genomes = new BitSet(maxGenomes);
-		workingSet = new BitSet(maxGenomes);
+		active = new int[Math.min(maxGenomes, 1024)];
 		count = new int[maxGenomes];
 		offspringCount = new int[maxGenomes];
-		fitness = new float[maxGenomes];
-		shockFitness = new float[maxGenomes];
+		neighbors = new int[N];
+		touched = new int[Math.min(maxGenomes, 1024)];
 		landscape = config.getLandscape();
 		// note we read landscapes before population, to allow computation of fitness
 		shockLandscape = config.getShockLandscape();
+		// materialized landscapes share their (read-only) fitness tables, otherwise fitness is computed on demand.
+		// Fitness on quantized landscapes is held as 16-bit codes, within twice the landscape quantization error
+		if(landscape.isMaterialized()) fitness = landscape.getDenseFitness();
+		else if(landscape.isQuantized()) fitnessCodes = new char[maxGenomes];
+		else fitness = new float[maxGenomes];
+		if(shockLandscape.isMaterialized()) shockFitness = shockLandscape.getDenseFitness();
+		else if(shockLandscape.isQuantized()) shockFitnessCodes = new char[maxGenomes];
+		else shockFitness = new float[maxGenomes];
+		materialized = landscape.isMaterialized();
+		shockMaterialized = shockLandscape.isMaterialized();
+		paired = !materialized && !shockMaterialized && fitness != null && shockFitness != null && landscape.sharesEpistasis(shockLandscape);
 		String populationFile = config.getPopulationFile();
 		if(populationFile == null || !readPopulation()){
 			// if no population file given, or if we could not read it, create an initial random population
 			for(int i = 0; i < config.getInitialPopulationSize(); i++){
 				int val = (int) config.getRandomGeneValue();
-				genomes.set(val);
+				activate(val);
 				count[val]++;
-				fitness[val] = landscape.getFitness(val);
-				shockFitness[val] = shockLandscape.getFitness(val);
+				evaluate(val);
+				if(maxFit < getFitness(val)) maxFit = getFitness(val);
 			}
+			Arrays.sort(active, 0, nActive);	// keep the active genomes in genome order
 			// if populationFile was given, and we were not able to read it, create it
 			if(populationFile != null){
 				writePopulation(populationFile);
@@ -117,16 +151,73 @@ public class PopulationCounter implements Population {
 		return;
 	}
 
+	/**
+	 * Evaluate a genome on the replication and shock landscapes, if its fitness is not yet known. If the landscapes
+	 * share an epistasis table, the gene indices are computed once for both
+	 * @param g - genome to evaluate
+	 */
+	private void evaluate(int g) {
+		if(paired && fitness[g] == 0 && shockFitness[g] == 0){
+			fitness[g] = landscape.getFitness(g, shockLandscape, shockFitness, g);
+			return;
+		}
+		if(!materialized && getFitness(g) == 0) setFitness(g, landscape.getFitness(g));
+		if(!shockMaterialized && getShockFitness(g) == 0) setShockFitness(g, shockLandscape.getFitness(g));
+		return;
+	}
+
+	/**
+	 * Get the fitness of a genome on the replication landscape
+	 * @param g - genome
+	 * @return - fitness of the genome, or 0 if it has not been evaluated
+	 */
+	private float getFitness(int g) {
+		return fitness != null ? fitness[g] : landscape.dequantizeFitness(fitnessCodes[g]);
+	}
+
+	/**
+	 * Get the fitness of a genome on the shock landscape
+	 * @param g - genome
+	 * @return - fitness of the genome, or 0 if it has not been evaluated
+	 */
+	private float getShockFitness(int g) {
+		return shockFitness != null ? shockFitness[g] : shockLandscape.dequantizeFitness(shockFitnessCodes[g]);
+	}
+
+	/**
+	 * Set the fitness of a genome on the replication landscape. Materialized fitness tables already hold the fitness of
+	 * every genome, and are not written
+	 * @param g - genome
+	 * @param f - fitness of the genome
+	 */
+	private void setFitness(int g, float f) {
+		if(materialized) return;
+		if(fitness != null) fitness[g] = f;
+		else fitnessCodes[g] = landscape.quantizeFitness(f);
+		return;
+	}
+
+	/**
+	 * Set the fitness of a genome on the shock landscape. Materialized fitness tables already hold the fitness of
+	 * every genome, and are not written
+	 * @param g - genome
+	 * @param f - fitness of the genome
+	 */
+	private void setShockFitness(int g, float f) {
+		if(shockMaterialized) return;
+		if(shockFitness != null) shockFitness[g] = f;
+		else shockFitnessCodes[g] = shockLandscape.quantizeFitness(f);
+		return;
+	}
+
 	/**
 	 * Compute the population statistics for the current population generation
 	 */
 	private void computeStatistics(){
 		// compute the current population size
 		populationSize = 0;
-		Iterator<Integer> iter = genomes.stream().iterator();
-		while(iter.hasNext()){
-			int g = iter.next();
-			populationSize += count[g];
+		for(int a = 0; a < nActive; a++){
+			populationSize += count[active[a]];
 		}
 		// if everyone is extinct, no stats can be obtained
 		if(populationSize == 0) {
@@ -139,15 +230,14 @@ public class PopulationCounter implements Population {
 		double sum = 0, sumA = 0, sumOfSquares = 0;
 		double shockSumA = 0, shockSumOfSquares = 0;
 		double denom = Math.log(size);
-		iter = genomes.stream().iterator();
-		while(iter.hasNext()){
-			int genome = iter.next();
-			double f = fitness[genome] * count[genome];			// sum of fitness for all genomes with this value on replication landscape
-			double sf = shockFitness[genome] * count[genome];	// sum of fitness for all genomes with this value on shock landscape
+		for(int a = 0; a < nActive; a++){
+			int genome = active[a];
+			double f = getFitness(genome) * count[genome];			// sum of fitness for all genomes with this value on replication landscape
+			double sf = getShockFitness(genome) * count[genome];	// sum of fitness for all genomes with this value on shock landscape
 			sumA += f;
 			shockSumA += sf;
-			sumOfSquares += fitness[genome] * f;				// sum of fitness^2 for all genomes with this value
-			shockSumOfSquares += shockFitness[genome] * sf;
+			sumOfSquares += getFitness(genome) * f;				// sum of fitness^2 for all genomes with this value
+			shockSumOfSquares += getShockFitness(genome) * sf;
 			sum += count[genome] * (Math.log(count[genome])-denom);		// sum pi * ln(pi); where pi = count[i]/uniques	
 		}
 		diversity = -sum/size;
@@ -173,7 +263,7 @@ public class PopulationCounter implements Population {
 	 */
 	@Override
 	public int uniqueGenomes() {
-		return genomes.cardinality();
+		return nActive;
 	}
 
 	/* (non-Javadoc)
@@ -240,10 +330,6 @@ public class PopulationCounter implements Population {
 	 */
 	@Override
 	public float getMaxFit(){
-		float maxFit = 0;
-		for(int i = 0; i < maxGenomes; i++){
-			if(maxFit < fitness[i]) maxFit = fitness[i];
-		}
 		return maxFit;
 	}
 	
@@ -254,10 +340,9 @@ public class PopulationCounter implements Population {
 	@Override
 	public float getMaxShockFit(){
 		float maxShockFit = 0;
-		Iterator<Integer> iter = genomes.stream().iterator();
-		while(iter.hasNext()){
-			int g = iter.next();
-			float sfit = shockFitness[g];
+		for(int a = 0; a < nActive; a++){
+			int g = active[a];
+			float sfit = getShockFitness(g);
 			if(maxShockFit < sfit) maxShockFit = sfit;
 		}
 		return maxShockFit;
@@ -268,7 +353,7 @@ public class PopulationCounter implements Population {
 	 */
 	@Override
 	public boolean advance() {
-		if(genomes.cardinality() == 0){
+		if(nActive == 0){
 			// we have nothing left in the population, update statistics and return
 			computeStatistics();
 			return false;	
@@ -276,61 +361,65 @@ public class PopulationCounter implements Population {
 		// increment the generation counter
 		generation++;
 		float cutoff = config.getCutoff(generation);	// replication fitness cutoff for this generation
-		
-		// Recall that Java does not let us modify the bitset while we are iterating on it,
-		// so we must use two different bitsets
-		
+
 		// Replication phase: mutate genes and update population for existing genomes
 		// compute probability of replication
 		float prob = maxPopulation == 0 ? 1.0F : Math.max(0.0F, Math.min(1.0F, (float)(alpha * (1.-(double)populationSize/(double)maxPopulation))));
-		workingSet.clear();	// clear the working set
-		Arrays.fill(offspringCount, 0);	// reset the offspring counts
-		Iterator<Integer> iter = genomes.stream().iterator();
-		while(iter.hasNext()){	// collect the off-spring in the working set
-			int g = iter.next();
-			float replProb = config.getReplicationProbability(fitness[g]) * prob;
-			int imax = count[g];
+		boolean counting = config.getEngine() == Engine.COUNT;
+		boolean single = config.getMutationStrategy() == MutationStrategy.SINGLE_RANDOM;
+		int parents = nActive;	// offspring new to the population are added after the parents
+		for(int a = 0; a < parents; a++){	// collect the off-spring counts
+			int g = active[a];
+			float replProb = config.getReplicationProbability(getFitness(g)) * prob;
+			// the count engine draws the number of individuals that replicate, instead of flipping a coin for each
+			int imax = counting ? config.randomBinomial(count[g], replProb) : count[g];
+			if(counting && single && imax > N){
+				// more offspring than one-bit neighbors: spread them over the neighbors, evaluating each neighbor once
+				config.randomMultinomial(imax, neighbors);
+				for(int j = 0; j < N; j++){
+					if(neighbors[j] > 0) addOffspring(g, g ^ (1 << j), neighbors[j], cutoff);
+				}
+				continue;
+			}
 			for(int i = 0; i < imax; i++){	// for each individual of this genotype
 				// flip a coin to see if it generates offspring
-				if(config.randomFloat() < replProb){
-					int offspring = mutate(g);
-					float ofit = fitness[offspring] > 0 ? fitness[offspring] : 
-						(fitness[offspring] = landscape.getFitness(offspring));
-					if(shockFitness[offspring] == 0) shockFitness[offspring] = shockLandscape.getFitness(offspring);
-					// if the offspring would survive the selection phase, add it to the population
-					if(ofit >= cutoff){
-						offspringCount[offspring]++;	
-						if(!genomes.get(offspring)) workingSet.set(offspring);
-					}
+				if(counting || config.randomFloat() < replProb){
+					addOffspring(g, mutate(g), 1, cutoff);
 				}
 			}
 		}
-		// mark the new offspring in the genome population
-		genomes.or(workingSet);
-		for(int i= 0; i < maxGenomes; i++){
-			count[i] += offspringCount[i];
+		// add the offspring to the genome population, visiting only the genomes that received offspring
+		for(int t = 0; t < nTouched; t++){
+			int offspring = touched[t];
+			count[offspring] += offspringCount[offspring];
+			offspringCount[offspring] = 0;	// reset the offspring counts for the next generation
+			activate(offspring);
 		}
+		nTouched = 0;
+		// keep the active genomes in genome order, so replication and statistics visit genomes in the same order
+		if(nActive > parents) Arrays.sort(active, 0, nActive);
 		// Selection phase: remove any genes that fall below the cutoff. 
-		workingSet.clear();
-		iter = genomes.stream().iterator();
-		while(iter.hasNext()){	// collect low-fitness genes in the working set
-			int g = iter.next();
-			if(fitness[g] < cutoff){
-				workingSet.set(g);
+		int kept = 0;
+		for(int a = 0; a < nActive; a++){
+			int g = active[a];
+			if(getFitness(g) < cutoff){
+				genomes.clear(g);	// clear them from the pool
 				count[g] = 0;	// set their count to zero
+			} else {
+				active[kept++] = g;
 			}
 		}
-		genomes.andNot(workingSet);		// and clear them from the pool
+		nActive = kept;
 		
 		// compute the statistics for this generation
 		computeStatistics();
-		if(genomes.cardinality() == 0){
+		if(nActive == 0){
 			return false;	// return if nothing left after selection
 		}
 
 		// At this point, we have gone through selection; write out the trace
 		if(writer != null){
-			writer.write(generation, genomes, count, fitness, cutoff, shockFitness, 0.0F);
+			writeTrace(cutoff, 0.0F);
 		}				
 		return true;
 	}
@@ -340,37 +429,76 @@ public class PopulationCounter implements Population {
 	 * @see jnk.Population#shock()
 	 */
 	public boolean shock(float shock){
-		if(genomes.cardinality() == 0) return false; // we have nothing left in the population, return
+		if(nActive == 0) return false; // we have nothing left in the population, return
 		if(shock < 0) return true;	// nothing affected
 		System.out.println("Generation - "+generation+" Shock "+shock);
 		
 		// we just have a selection phase for the shocks
-		workingSet.clear();
-		Iterator<Integer> iter = genomes.stream().iterator();
-		while(iter.hasNext()){	// collect genes in the working set
-			int g = iter.next();
+		int kept = 0;
+		for(int a = 0; a < nActive; a++){
+			int g = active[a];
 			//if(shockLandscape.getFitness(g) < shock){
-			if(shockFitness[g] < shock){
-				workingSet.set(g);	// this genome will not survive
+			if(getShockFitness(g) < shock){
+				genomes.clear(g);	// this genome will not survive; clear it from the pool
 				count[g] = 0;		// set its count to zero
+			} else {
+				active[kept++] = g;
 			}
 		}
-		genomes.andNot(workingSet);	// and clear killed individuals from the pool
+		nActive = kept;
 		
 		// re-compute the new statistics after the shock
 		computeStatistics();
 		
-		if(genomes.cardinality() == 0){
+		if(nActive == 0){
 			return false;	// return if nothing left after selection
 		}
 
 		// At this point, we have gone through shock selection; write out the trace
 		if(writer != null){
-			writer.write(generation, genomes, count, fitness,(float)0.0,shockFitness,shock);
+			writeTrace((float)0.0, shock);
 		}
 		return true;
 	}
 	
+	/**
+	 * Add a genome to the active genomes, if it is not already present. Genomes are added at the end of active[]
+	 * @param g - genome to add
+	 */
+	private void activate(int g) {
+		if(genomes.get(g)) return;
+		genomes.set(g);
+		if(nActive == active.length) active = Arrays.copyOf(active, Math.min(maxGenomes, 2 * nActive));
+		active[nActive++] = g;
+		return;
+	}
+	
+	/**
+	 * Evaluate offspring of a genome, and add them to the offspring counts if they survive the selection phase
+	 * @param g - parent genome
+	 * @param offspring - offspring genome
+	 * @param n - number of offspring
+	 * @param cutoff - replication fitness cutoff for this generation
+	 */
+	private void addOffspring(int g, int offspring, int n, float cutoff) {
+		if(!incremental) evaluate(offspring);
+		if(!materialized && getFitness(offspring) <= 0) setFitness(offspring, incremental ?
+			landscape.getFitnessDelta(g, getFitness(g), g ^ offspring) : landscape.getFitness(offspring));
+		float ofit = getFitness(offspring);
+		if(!shockMaterialized && getShockFitness(offspring) == 0) setShockFitness(offspring, incremental ?
+			shockLandscape.getFitnessDelta(g, getShockFitness(g), g ^ offspring) : shockLandscape.getFitness(offspring));
+		if(maxFit < ofit) maxFit = ofit;
+		// if the offspring would survive the selection phase, add it to the population
+		if(ofit >= cutoff){
+			if(offspringCount[offspring] == 0){
+				if(nTouched == touched.length) touched = Arrays.copyOf(touched, Math.min(maxGenomes, 2 * nTouched));
+				touched[nTouched++] = offspring;
+			}
+			offspringCount[offspring] += n;
+		}
+		return;
+	}
+	
 	/**
 	 * Mutate a gene
 	 * @param g -gene value to mutate
@@ -385,9 +513,14 @@ public class PopulationCounter implements Population {
 			int value = g ^ mask;			// mutate that bit in the parent to generate this genome
 			return value;
 		case MULTI_RANDOM:
+			value = g;
+			if(config.getEngine() == Engine.COUNT){
+				// jump between the flipped bits, skipping the bits left unchanged
+				for(int i = config.randomSkip(); i < N; i += config.randomSkip() + 1) value ^= 1 << i;
+				return value;
+			}
 			float p = config.getMutationProbability();
 			mask = 1;
-			value = g;
 			for(int i = 0; i < N; i++){
 				if(config.randomFloat() < p) value ^= mask;
 				mask <<= 1;
@@ -410,10 +543,9 @@ public class PopulationCounter implements Population {
 	}
 	
 	public void writePopulation(PrintStream out) {
-		Iterator<Integer> iter = genomes.stream().iterator();
-		while(iter.hasNext()){
-			int g = iter.next();
-			out.println(String.format("%d %d %d %f %f", generation, g,count[g], fitness[g], shockFitness[g]));
+		for(int a = 0; a < nActive; a++){
+			int g = active[a];
+			out.println(String.format("%d %d %d %f %f", generation, g,count[g], getFitness(g), getShockFitness(g)));
 		}
 		return;
 	}
@@ -429,10 +561,9 @@ public class PopulationCounter implements Population {
 			out.println("# Created "+ZonedDateTime.now().toString());
 			out.println("# N = "+N+", K = "+config.getK()+", seed = "+config.getSeed()+", shockseed = "+config.getSseed());
 			out.println("# gen genome count fitness shockfitness");
-			Iterator<Integer> iter = genomes.stream().iterator();
-			while(iter.hasNext()){
-				int g = iter.next();
-				out.println(String.format("%d %d %d %f %f", generation, g,count[g], fitness[g], shockFitness[g]));
+			for(int a = 0; a < nActive; a++){
+				int g = active[a];
+				out.println(String.format("%d %d %d %f %f", generation, g,count[g], getFitness(g), getShockFitness(g)));
 			}
 			out.close();
 		} catch (FileNotFoundException e) {
@@ -461,20 +592,21 @@ public class PopulationCounter implements Population {
 				} else if(parts.length == 2){
 					// have genome count
 					int g = Integer.valueOf(parts[0]);
-					genomes.set(g);
+					activate(g);
 					count[g] = Integer.valueOf(parts[1]);
-					fitness[g] = landscape.getFitness(g);
-					shockFitness[g] = shockLandscape.getFitness(g);
+					evaluate(g);
+					if(maxFit < getFitness(g)) maxFit = getFitness(g);
 				} else {
 					// have generation genome count fitness shockfitness
 					int g = Integer.valueOf(parts[1]);
-					genomes.set(g);
+					activate(g);
 					count[g] = Integer.valueOf(parts[2]);
-					fitness[g] = landscape.getFitness(g);
-					shockFitness[g] = shockLandscape.getFitness(g);
+					evaluate(g);
+					if(maxFit < getFitness(g)) maxFit = getFitness(g);
 				}
 			}
 			inp.close();
+			Arrays.sort(active, 0, nActive);	// keep the active genomes in genome order
 			return true;
 		} catch (IOException e) {
 			System.out.println(e.toString());
@@ -499,9 +631,26 @@ public class PopulationCounter implements Population {
 		if(config.hasOption("trace")){
 			writer = TraceWriter.getWriter(config);
 			status =  writer.open();
-			if(status) writer.write(generation, genomes, count, fitness, config.getCutoff(generation), shockFitness, 0.0F);
+			if(status) writeTrace(config.getCutoff(generation), 0.0F);
 		}
 		return status;
 	}
 
+	/**
+	 * Write the current population to the trace
+	 * @param cutoff - replication cutoff value
+	 * @param shock - current shock value
+	 */
+	private void writeTrace(float cutoff, float shock) {
+		if(fitness != null && shockFitness != null){
+			writer.write(generation, active, nActive, count, fitness, cutoff, shockFitness, shock);
+			return;
+		}
+		for(int a = 0; a < nActive; a++){
+			int g = active[a];
+			writer.write(generation, g, count[g], getFitness(g), cutoff, getShockFitness(g), shock);
+		}
+		return;
+	}
+
 }
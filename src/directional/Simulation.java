@@ -40,7 +40,8 @@ public class Simulation {
 		// get the configuration
 		config = new Configuration(args);
 		// create the initial population
-		pop = new PopulationCounter(config);
+		if(config.multiWordGenomes()) pop = new GenomePopulation(config);
+		else pop = config.sparsePopulation() ? new SparsePopulation(config) : new PopulationCounter(config);
 		return;
 	}
 	
@@ -0,0 +1,685 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * SparsePopulation - tracks populations of genomes of up to 63 bits by their counts. Genomes present
+ * in the population are held in slots, found through an open-addressing hash index, so memory scales with
+ * the number of unique genomes rather than with pow(2,N). Slots are kept in genome order when the
+ * population is iterated, so for N &lt;= 30 the simulation follows the same path as PopulationCounter
+ * @author Sharad Singhal
+ */
+public class SparsePopulation implements Population {
+	/** Initial number of genome slots */
+	private static final int INITIAL_CAPACITY = 1024;
+	/** Simulation configuration */
+	private Configuration config;
+	/** current generation */
+	private int generation;
+	/** genome values, indexed by slot */
+	private long genome[];
+	/** genome counts in the population, indexed by slot */
+	private int count[];
+	/** count of offspring during replication, indexed by slot */
+	private int offspringCount[];
+	/** number of offspring produced at each one-bit neighbor of a genome */
+	private int neighbors[];
+	/** fitness values of the genomes, indexed by slot */
+	private float fitness[];
+	/** fitness values of the genomes under the shock landscape, indexed by slot */
+	private float shockFitness[];
+	/** number of slots in use */
+	private int size = 0;
+	/** true if the slots are in genome order */
+	private boolean sorted = true;
+	/** open-addressing hash index from genome to (slot+1). 0 marks an empty entry */
+	private int index[];
+	/** number of bits in the hash index */
+	private int indexBits;
+	/** Genome size in bits */
+	private int N;
+	/** Trace writer to write the simulation trace to a file */
+	private TraceWriter writer = null;
+	/** average fitness for the population */
+	private double average;
+	/** average fitness for the population under shocks */
+	private double shockAverage;
+	/** standard deviation for the population */
+	private double stdev;
+	/** standard deviation for the population under shocks */
+	private double shockStDev;
+	/** shannon diversity for the population */
+	private double diversity;
+	/** maximum population size limit */
+	private int maxPopulation;
+	/** growth factor per generation */
+	private double alpha;
+	/** current population size */
+	private int populationSize;
+	/** evenness of population */
+	private double even;
+	/** Replication Landscape being used */
+	private Landscape landscape;
+	/** Shock landscape being used */
+	private Landscape shockLandscape;
+	/** true if offspring fitness is evaluated incrementally from the parent */
+	private boolean incremental;
+	/** true if the replication and shock landscapes share an epistasis table, and are evaluated together */
+	private boolean paired;
+	/** shock fitness of the last genome evaluated on both landscapes together */
+	private float pairedFitness[] = new float[1];
+	/** maximum fitness of all genomes evaluated so far */
+	private float maxFit = 0;
+
+	/**
+	 * Create a sparse population
+	 * @param config - Configuration to use
+	 */
+	public SparsePopulation(Configuration config) {
+		this.config = config;
+		N = config.getN();
+		generation = 0;
+		maxPopulation = config.getMaxPopulation();
+		alpha = config.getAlpha();
+		incremental = config.incrementalFitness();
+		genome = new long[INITIAL_CAPACITY];
+		count = new int[INITIAL_CAPACITY];
+		offspringCount = new int[INITIAL_CAPACITY];
+		neighbors = new int[N];
+		fitness = new float[INITIAL_CAPACITY];
+		shockFitness = new float[INITIAL_CAPACITY];
+		indexBits = Integer.numberOfTrailingZeros(INITIAL_CAPACITY) + 1;
+		index = new int[1 << indexBits];
+		landscape = config.getLandscape();
+		// note we read landscapes before population, to allow computation of fitness
+		shockLandscape = config.getShockLandscape();
+		paired = landscape.sharesEpistasis(shockLandscape);
+		String populationFile = config.getPopulationFile();
+		if(populationFile == null || !readPopulation()){
+			// if no population file given, or if we could not read it, create an initial random population
+			for(int i = 0; i < config.getInitialPopulationSize(); i++){
+				long val = config.getRandomGenome();
+				int slot = find(val);
+				if(slot < 0) slot = add(val);
+				count[slot]++;
+				if(maxFit < fitness[slot]) maxFit = fitness[slot];
+			}
+			// if populationFile was given, and we were not able to read it, create it
+			if(populationFile != null){
+				writePopulation(populationFile);
+			}
+		}
+		// compute statistics based on initial population (generation = 0)
+		computeStatistics();
+		return;
+	}
+
+	/**
+	 * Find the slot holding a genome
+	 * @param g - genome to find
+	 * @return - slot holding the genome, or -1 if the genome is not in the population
+	 */
+	private int find(long g) {
+		int mask = index.length - 1;
+		for(int h = hash(g); ; h = (h + 1) & mask){
+			int slot = index[h] - 1;
+			if(slot < 0) return -1;
+			if(genome[slot] == g) return slot;
+		}
+	}
+
+	/**
+	 * Get the position of a genome in the hash index
+	 * @param g - genome value
+	 * @return - starting position for the genome in the index
+	 */
+	private int hash(long g) {
+		return (int) ((g * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - indexBits));
+	}
+
+	/**
+	 * Add a genome to the population with a count of 0
+	 * @param g - genome to add. It must not be in the population
+	 * @param f - fitness of the genome
+	 * @param sf - fitness of the genome on the shock landscape
+	 * @return - slot holding the genome
+	 */
+	private int add(long g, float f, float sf) {
+		if(size == genome.length){
+			int capacity = size << 1;
+			genome = Arrays.copyOf(genome, capacity);
+			count = Arrays.copyOf(count, capacity);
+			offspringCount = Arrays.copyOf(offspringCount, capacity);
+			fitness = Arrays.copyOf(fitness, capacity);
+			shockFitness = Arrays.copyOf(shockFitness, capacity);
+		}
+		int slot = size++;
+		if(slot > 0 && genome[slot-1] > g) sorted = false;
+		genome[slot] = g;
+		count[slot] = 0;
+		offspringCount[slot] = 0;
+		fitness[slot] = f;
+		shockFitness[slot] = sf;
+		// keep the index at most half full
+		if(size << 1 > index.length){
+			indexBits++;
+			rebuildIndex();
+		} else {
+			insert(slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Evaluate a genome on both landscapes, and add it to the population with a count of 0
+	 * @param g - genome to add. It must not be in the population
+	 * @return - slot holding the genome
+	 */
+	private int add(long g) {
+		if(paired){
+			float f = landscape.getFitness(g, shockLandscape, pairedFitness, 0);
+			return add(g, f, pairedFitness[0]);
+		}
+		return add(g, landscape.getFitness(g), shockLandscape.getFitness(g));
+	}
+
+	/**
+	 * Insert a slot into the hash index
+	 * @param slot - slot to insert
+	 */
+	private void insert(int slot) {
+		int mask = index.length - 1;
+		int h = hash(genome[slot]);
+		while(index[h] != 0) h = (h + 1) & mask;
+		index[h] = slot + 1;
+		return;
+	}
+
+	/**
+	 * Rebuild the hash index from the slots
+	 */
+	private void rebuildIndex() {
+		if(index.length != 1 << indexBits) index = new int[1 << indexBits];
+		else Arrays.fill(index, 0);
+		for(int slot = 0; slot < size; slot++) insert(slot);
+		return;
+	}
+
+	/**
+	 * Remove all genomes with zero count from the population, keeping the remaining slots in order
+	 */
+	private void removeExtinct() {
+		int n = 0;
+		for(int slot = 0; slot < size; slot++){
+			if(count[slot] == 0) continue;
+			genome[n] = genome[slot];
+			count[n] = count[slot];
+			offspringCount[n] = offspringCount[slot];
+			fitness[n] = fitness[slot];
+			shockFitness[n] = shockFitness[slot];
+			n++;
+		}
+		if(n != size){
+			size = n;
+			rebuildIndex();
+		}
+		return;
+	}
+
+	/**
+	 * Put the slots in genome order, if needed
+	 */
+	private void sort() {
+		if(sorted) return;
+		long sortedGenomes[] = Arrays.copyOf(genome, size);
+		Arrays.sort(sortedGenomes);
+		int newCount[] = new int[genome.length];
+		float newFitness[] = new float[genome.length];
+		float newShockFitness[] = new float[genome.length];
+		for(int n = 0; n < size; n++){
+			int slot = find(sortedGenomes[n]);
+			newCount[n] = count[slot];
+			newFitness[n] = fitness[slot];
+			newShockFitness[n] = shockFitness[slot];
+		}
+		System.arraycopy(sortedGenomes, 0, genome, 0, size);
+		count = newCount;
+		fitness = newFitness;
+		shockFitness = newShockFitness;
+		Arrays.fill(offspringCount, 0, size, 0);
+		sorted = true;
+		rebuildIndex();
+		return;
+	}
+
+	/**
+	 * Compute the population statistics for the current population generation
+	 */
+	private void computeStatistics(){
+		sort();
+		// compute the current population size
+		populationSize = 0;
+		for(int slot = 0; slot < size; slot++){
+			populationSize += count[slot];
+		}
+		// if everyone is extinct, no stats can be obtained
+		if(populationSize == 0) {
+			average = shockAverage = stdev = shockStDev = diversity = even = -1;
+			return;
+		}
+		// compute the descriptive statistics
+		double size = populationSize;
+		double n = uniqueGenomes();
+		double sum = 0, sumA = 0, sumOfSquares = 0;
+		double shockSumA = 0, shockSumOfSquares = 0;
+		double denom = Math.log(size);
+		for(int slot = 0; slot < this.size; slot++){
+			double f = fitness[slot] * count[slot];			// sum of fitness for all genomes with this value on replication landscape
+			double sf = shockFitness[slot] * count[slot];	// sum of fitness for all genomes with this value on shock landscape
+			sumA += f;
+			shockSumA += sf;
+			sumOfSquares += fitness[slot] * f;				// sum of fitness^2 for all genomes with this value
+			shockSumOfSquares += shockFitness[slot] * sf;
+			sum += count[slot] * (Math.log(count[slot])-denom);		// sum pi * ln(pi); where pi = count[i]/uniques
+		}
+		diversity = -sum/size;
+		even = diversity / Math.log(n);
+		average = sumA/size;
+		stdev = Math.sqrt((sumOfSquares - sumA * sumA / size)/(size-1));
+		shockAverage = shockSumA/size;
+		shockStDev = Math.sqrt((shockSumOfSquares - shockSumA * shockSumA / size)/(size-1));
+		return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getGeneration()
+	 */
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#uniqueGenomes()
+	 */
+	@Override
+	public int uniqueGenomes() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#populationSize()
+	 */
+	@Override
+	public int populationSize() {
+		return populationSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getShannonDiversity()
+	 */
+	@Override
+	public double getShannonDiversity() {
+		return diversity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getEvenness()
+	 */
+	@Override
+	public double getEvenness(){
+		return even;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getAverageFitness()
+	 */
+	@Override
+	public double getAverageFitness() {
+		return average;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getAverageShockFitness()
+	 */
+	@Override
+	public double getAverageShockFitness(){
+		return shockAverage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getStandardDeviation()
+	 */
+	@Override
+	public double getStandardDeviation() {
+		return stdev;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getShockStDev()
+	 */
+	@Override
+	public double getShockStDev(){
+		return shockStDev;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getMaxFit()
+	 */
+	@Override
+	public float getMaxFit(){
+		return maxFit;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#getMaxShockFit()
+	 */
+	@Override
+	public float getMaxShockFit(){
+		float maxShockFit = 0;
+		for(int slot = 0; slot < size; slot++){
+			if(maxShockFit < shockFitness[slot]) maxShockFit = shockFitness[slot];
+		}
+		return maxShockFit;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#advance()
+	 */
+	@Override
+	public boolean advance() {
+		if(size == 0){
+			// we have nothing left in the population, update statistics and return
+			computeStatistics();
+			return false;
+		}
+		// increment the generation counter
+		generation++;
+		float cutoff = config.getCutoff(generation);	// replication fitness cutoff for this generation
+
+		// Replication phase: mutate genes and update population for existing genomes
+		// compute probability of replication
+		float prob = maxPopulation == 0 ? 1.0F : Math.max(0.0F, Math.min(1.0F, (float)(alpha * (1.-(double)populationSize/(double)maxPopulation))));
+		boolean counting = config.getEngine() == Engine.COUNT;
+		boolean single = config.getMutationStrategy() == MutationStrategy.SINGLE_RANDOM;
+		sort();
+		int parents = size;	// offspring new to the population are added after the parents
+		for(int s = 0; s < parents; s++){
+			long g = genome[s];
+			float replProb = config.getReplicationProbability(fitness[s]) * prob;
+			// the count engine draws the number of individuals that replicate, instead of flipping a coin for each
+			int imax = counting ? config.randomBinomial(count[s], replProb) : count[s];
+			if(counting && single && imax > N){
+				// more offspring than one-bit neighbors: spread them over the neighbors, evaluating each neighbor once
+				config.randomMultinomial(imax, neighbors);
+				for(int j = 0; j < N; j++){
+					if(neighbors[j] > 0) addOffspring(s, g ^ (1L << j), neighbors[j], cutoff);
+				}
+				continue;
+			}
+			for(int i = 0; i < imax; i++){	// for each individual of this genotype
+				// flip a coin to see if it generates offspring
+				if(counting || config.randomFloat() < replProb){
+					addOffspring(s, mutate(g), 1, cutoff);
+				}
+			}
+		}
+		// add the new offspring to the population
+		for(int slot = 0; slot < size; slot++){
+			count[slot] += offspringCount[slot];
+			offspringCount[slot] = 0;
+		}
+		// Selection phase: remove any genes that fall below the cutoff.
+		for(int slot = 0; slot < size; slot++){
+			if(fitness[slot] < cutoff) count[slot] = 0;
+		}
+		removeExtinct();
+
+		// compute the statistics for this generation
+		computeStatistics();
+		if(size == 0){
+			return false;	// return if nothing left after selection
+		}
+
+		// At this point, we have gone through selection; write out the trace
+		writeTrace(cutoff, 0.0F);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#shock(float)
+	 */
+	@Override
+	public boolean shock(float shock){
+		if(size == 0) return false; // we have nothing left in the population, return
+		if(shock < 0) return true;	// nothing affected
+		System.out.println("Generation - "+generation+" Shock "+shock);
+
+		// we just have a selection phase for the shocks
+		for(int slot = 0; slot < size; slot++){
+			if(shockFitness[slot] < shock) count[slot] = 0;	// this genome will not survive
+		}
+		removeExtinct();
+
+		// re-compute the new statistics after the shock
+		computeStatistics();
+
+		if(size == 0){
+			return false;	// return if nothing left after selection
+		}
+
+		// At this point, we have gone through shock selection; write out the trace
+		writeTrace(0.0F, shock);
+		return true;
+	}
+
+	/**
+	 * Write the current population to the trace, if a trace is being written
+	 * @param cutoff - replication cutoff value
+	 * @param shock - current shock value
+	 */
+	private void writeTrace(float cutoff, float shock) {
+		if(writer == null) return;
+		for(int slot = 0; slot < size; slot++){
+			writer.write(generation, genome[slot], count[slot], fitness[slot], cutoff, shockFitness[slot], shock);
+		}
+		return;
+	}
+
+	/**
+	 * Evaluate offspring of a parent, and add them to the offspring counts if they survive the selection phase
+	 * @param s - slot of the parent genome
+	 * @param offspring - offspring genome
+	 * @param n - number of offspring
+	 * @param cutoff - replication fitness cutoff for this generation
+	 */
+	private void addOffspring(int s, long offspring, int n, float cutoff) {
+		long g = genome[s];
+		int slot = find(offspring);
+		// landscapes sharing an epistasis table are evaluated together, reading the gene indices once
+		boolean both = slot < 0 && paired && !incremental;
+		float ofit = slot >= 0 ? fitness[slot] : incremental ? landscape.getFitnessDelta(g, fitness[s], g ^ offspring) :
+			both ? landscape.getFitness(offspring, shockLandscape, pairedFitness, 0) : landscape.getFitness(offspring);
+		if(maxFit < ofit) maxFit = ofit;
+		// if the offspring would survive the selection phase, add it to the population
+		if(ofit >= cutoff){
+			if(slot < 0){
+				float sfit = incremental ? shockLandscape.getFitnessDelta(g, shockFitness[s], g ^ offspring) :
+					both ? pairedFitness[0] : shockLandscape.getFitness(offspring);
+				slot = add(offspring, ofit, sfit);
+			}
+			offspringCount[slot] += n;
+		}
+		return;
+	}
+
+	/**
+	 * Mutate a gene
+	 * @param g -gene value to mutate
+	 * @return - value of mutated gene
+	 */
+	private long mutate(long g) {
+		switch(config.getMutationStrategy()){
+		case REPLICATE:
+			return g;
+		case SINGLE_RANDOM:
+			long mask = 1L << (int)(config.randomFloat()*N);	// mask has a single random bit[0:N) = 1
+			return g ^ mask;		// mutate that bit in the parent to generate this genome
+		case MULTI_RANDOM:
+			long value = g;
+			if(config.getEngine() == Engine.COUNT){
+				// jump between the flipped bits, skipping the bits left unchanged
+				for(int i = config.randomSkip(); i < N; i += config.randomSkip() + 1) value ^= 1L << i;
+				return value;
+			}
+			float p = config.getMutationProbability();
+			mask = 1;
+			for(int i = 0; i < N; i++){
+				if(config.randomFloat() < p) value ^= mask;
+				mask <<= 1;
+			}
+			return value;
+		default:
+			break;
+		}
+		throw new RuntimeException("SparsePopulation: "+config.getMutationStrategy()+" not yet implemented");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#writePopulation()
+	 */
+	@Override
+	public void writePopulation() {
+		String outputFile = config.getFileName("pop-");
+		writePopulation(outputFile);
+		return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#writePopulation(java.io.PrintStream)
+	 */
+	@Override
+	public void writePopulation(PrintStream out) {
+		sort();
+		for(int slot = 0; slot < size; slot++){
+			out.println(String.format("%d %d %d %f %f", generation, genome[slot], count[slot], fitness[slot], shockFitness[slot]));
+		}
+		return;
+	}
+
+	/**
+	 * Write the current population to a file
+	 * @param outputFile - file to write
+	 */
+	private void writePopulation(String outputFile){
+		try {
+			PrintStream out = new PrintStream(new File(outputFile));
+			out.println(Configuration.banner);
+			out.println("# Created "+ZonedDateTime.now().toString());
+			out.println("# N = "+N+", K = "+config.getK()+", seed = "+config.getSeed()+", shockseed = "+config.getSseed());
+			out.println("# gen genome count fitness shockfitness");
+			writePopulation(out);
+			out.close();
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open file "+outputFile);
+		}
+		return;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#readPopulation()
+	 */
+	@Override
+	public boolean readPopulation() {
+		String populationFile = config.getPopulationFile();
+		try {
+			BufferedReader inp = new BufferedReader(new InputStreamReader(new FileInputStream(new File(populationFile))));
+			String line;
+			while((line = inp.readLine()) != null){
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				String [] parts = line.split(" ");
+				if(parts.length < 2){
+					inp.close();
+					throw new IOException("Unable to read population file "+populationFile+" Expected at least 2 values found "+parts.length);
+				}
+				// have either genome count, or generation genome count fitness shockfitness
+				int field = parts.length == 2 ? 0 : 1;
+				long g = Long.parseLong(parts[field]);
+				int slot = find(g);
+				if(slot < 0) slot = add(g);
+				count[slot] = Integer.parseInt(parts[field+1]);
+				if(maxFit < fitness[slot]) maxFit = fitness[slot];
+			}
+			inp.close();
+			return true;
+		} catch (IOException e) {
+			System.out.println(e.toString());
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#close()
+	 */
+	@Override
+	public void close(){
+		if(writer != null) writer.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see directional.Population#open()
+	 */
+	@Override
+	public boolean open() {
+		boolean status = false;
+		if(config.hasOption("trace")){
+			writer = TraceWriter.getWriter(config);
+			status =  writer.open();
+			if(status){
+				sort();
+				writeTrace(config.getCutoff(generation), 0.0F);
+			}
+		}
+		return status;
+	}
+}
@@ -17,8 +17,6 @@ package directional;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
-import java.util.BitSet;
-import java.util.Iterator;
 
 /**
  * Class to Write out the simulation trace in a variety of formats
@@ -33,6 +31,8 @@ public class TraceWriter {
 	private Configuration config;
 	/** format for writing a trace line */
 	private String format = null;
+	/** format for writing a trace line for a multi-word genome */
+	private String genomeFormat = null;
 	/** Trace header */
 	private String header = null;
 	/** Trace type */
@@ -46,10 +46,12 @@ public class TraceWriter {
 		switch(traceType){
 		case TSV:
 			format = "%d\t%d\t%d\t%9.6f\t%9.6f\t%9.6f\t%9.6f";
+			genomeFormat = "%d\t%s\t%d\t%9.6f\t%9.6f\t%9.6f\t%9.6f";
 			header = "Generation\tGenome\tCount\tFitness\tCutoff\tshock\tshockFitness";
 			break;
 		case CSV:
 			format = "%d,%d,%d,%9.6f,%9.6f,%9.6f,%9.6f";
+			genomeFormat = "%d,%s,%d,%9.6f,%9.6f,%9.6f,%9.6f";
 			header = "Generation,Genome,Count,Fitness,Cutoff,shock,shockFitness";
 			break;
 		case NONE:
@@ -114,20 +116,20 @@ public class TraceWriter {
 	/**
 	 * Write out the trace values at the current generation
 	 * @param generation - current generation
-	 * @param genomes - bitset containing the genomes
+	 * @param genomes - array containing the genomes
+	 * @param n - number of genomes in the array
 	 * @param count - array giving the count values for the genomes
 	 * @param fitness - genome fitness on the replication landscape
 	 * @param cutoff - replication cutoff value
 	 * @param shockFitness - array giving fitness on the shock landscape
 	 * @param shock - current shock value
 	 */
-	public void write(int generation, BitSet genomes, int[] count, float[] fitness, float cutoff, float [] shockFitness, float shock) {
+	public void write(int generation, int genomes[], int n, int[] count, float[] fitness, float cutoff, float [] shockFitness, float shock) {
 		switch(traceType){
 		case TSV:
 		case CSV:
-			Iterator<Integer> iter = genomes.stream().iterator();
-			while(iter.hasNext()){
-				int g = iter.next();
+			for(int i = 0; i < n; i++){
+				int g = genomes[i];
 				writerStream.println(String.format(format,generation,g,count[g],fitness[g],cutoff,shockFitness[g],shock));	
 			}
 			break;
@@ -136,4 +138,48 @@ public class TraceWriter {
 			break;
 		}
 	}
+
+	/**
+	 * Write out the trace values for a single genome at the current generation
+	 * @param generation - current generation
+	 * @param genome - value of the genome
+	 * @param count - number of individuals with this genome
+	 * @param fitness - genome fitness on the replication landscape
+	 * @param cutoff - replication cutoff value
+	 * @param shockFitness - genome fitness on the shock landscape
+	 * @param shock - current shock value
+	 */
+	public void write(int generation, long genome, int count, float fitness, float cutoff, float shockFitness, float shock) {
+		switch(traceType){
+		case TSV:
+		case CSV:
+			writerStream.println(String.format(format,generation,genome,count,fitness,cutoff,shockFitness,shock));
+			break;
+		case NONE:
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Write out the trace values for a single multi-word genome at the current generation. The genome is written in hexadecimal
+	 * @param generation - current generation
+	 * @param genome - the genome
+	 * @param count - number of individuals with this genome
+	 * @param fitness - genome fitness on the replication landscape
+	 * @param cutoff - replication cutoff value
+	 * @param shockFitness - genome fitness on the shock landscape
+	 * @param shock - current shock value
+	 */
+	public void write(int generation, Genome genome, int count, float fitness, float cutoff, float shockFitness, float shock) {
+		switch(traceType){
+		case TSV:
+		case CSV:
+			writerStream.println(String.format(genomeFormat,generation,genome,count,fitness,cutoff,shockFitness,shock));
+			break;
+		case NONE:
+		default:
+			break;
+		}
+	}
 }
@@ -23,7 +23,6 @@ import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.time.ZonedDateTime;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.Random;
 
 /**
@@ -37,10 +36,11 @@ public class TunableLandscape {
 	private int K;
 	/** table [N][K+1] to hold epistasis relationships */
 	private int epistasis_locations[][];
-	/** fitness values [pow(2,K+1)][N] corresponding to epistasis table */
-	private float fitness_table[][];
+	/** fitness values [N * pow(2,K+1)] corresponding to epistasis table, held locus-major: the value of gene index g
+	 * of locus i is at i * pow(2,K+1) + g. Files keep the [pow(2,K+1)][N] order */
+	private float fitness_table[];
 	/** Map containing landscape peaks */
-	private HashMap<Integer,Float> peaks = new HashMap<Integer,Float>();
+	private PeakMap peaks = new PeakMap();
 	/** max peak value in the landscape */
 	private float maxPeak = -Float.MAX_VALUE;
 	/** min peak value in the landscape */
@@ -76,7 +76,7 @@ public class TunableLandscape {
 		kMax = (int)Math.pow(2,K+1);
 		if(seed != 0) random = new Random(seed);
 		epistasis_locations = new int[N][K+1];
-		fitness_table = new float[kMax][N];
+		fitness_table = new float[N * kMax];
 		// if we are not given a landscape, or if the landscape file cannot be read, create a random landscape
 		if(landscapeFile == null || !readLandscape()){
 			// create the epistasis table
@@ -113,7 +113,7 @@ public class TunableLandscape {
 			// create the fitness table
 			for(int i = 0; i < N; i++){
 				for(int j = 0; j < kMax; j++){
-					fitness_table[j][i] = (float) (random != null ? random.nextDouble() : Math.random());
+					fitness_table[i * kMax + j] = (float) (random != null ? random.nextDouble() : Math.random());
 				}
 			}
 			// locate all peaks in the landscape
@@ -180,6 +180,7 @@ public class TunableLandscape {
 				if(minPeak > fitness[i]) minPeak = fitness[i];
 			}
 		}
+		peaks.trim();
 		return;
 	}
 
@@ -200,7 +201,7 @@ public class TunableLandscape {
 				}
 			}
 			// add the fitness value for the bit location
-			fitness += fitness_table[gene][i];
+			fitness += fitness_table[i * kMax + gene];
 		}
 		// fitness /= N;
 		// overall fitness is the logistic function on the average of the N locations
@@ -225,7 +226,7 @@ public class TunableLandscape {
 				}
 			}
 			// adjust the fitness table value for this gene. Reduce weight if error > 0, increase otherwise
-			fitness_table[gene][i] *= (1.-epsilon * error);
+			fitness_table[i * kMax + gene] *= (1.-epsilon * error);
 		}
 		return;
 	}
@@ -258,7 +259,7 @@ public class TunableLandscape {
 	 * Get all peaks available for this landscape
 	 * @return - Map containing genome {genome,peakheight}
 	 */
-	public HashMap<Integer,Float> getPeaks(){
+	public PeakMap getPeaks(){
 		return peaks;
 	}
 
@@ -283,14 +284,14 @@ public class TunableLandscape {
 			out.println("# Fitness Table[pow(2,K+1)][N]:");
 			for(int i=0; i < kMax; i++){
 				for(int j = 0; j < N; j++){
-					out.print(String.format("%f ",fitness_table[i][j]));
+					out.print(String.format("%f ",fitness_table[j * kMax + i]));
 				}
 				out.print("\n");
 			}
 			if(peaks.size() > 0){
 				out.println("# Fitness Peaks "+peaks.size());
-				for(Integer key : peaks.keySet()){
-					out.println(String.format("%d %f", key,peaks.get(key)));
+				for(int p = 0; p < peaks.size(); p++){
+					out.println(String.format("%d %f", peaks.getGenome(p),peaks.getFitness(p)));
 				}
 			}
 			out.close();
@@ -341,7 +342,7 @@ public class TunableLandscape {
 						throw new IOException("Unable to read "+landscapeFile);
 					}
 					for(int j = 0; j < N; j++){
-						fitness_table[i][j] = Float.parseFloat(parts[j]);
+						fitness_table[j * kMax + i] = Float.parseFloat(parts[j]);
 					}
 					i++;
 				}
@@ -356,12 +357,13 @@ public class TunableLandscape {
 						inp.close();
 						throw new IOException("Illegal Landscape file "+landscapeFile+" Expected 2 values found "+parts.length);
 					}
-					Integer g = Integer.valueOf(parts[0]);
-					Float f = Float.valueOf(parts[1]);
+					int g = Integer.parseInt(parts[0]);
+					float f = Float.parseFloat(parts[1]);
 					if(maxPeak < f) maxPeak = f;
 					if(minPeak > f) minPeak = f;
 					peaks.put(g, f);
 				}
+				peaks.trim();
 				inp.close();
 				return true;
 			} catch (IOException e) {
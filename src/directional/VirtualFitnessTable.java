@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2019, Sonia Singhal
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package directional;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Fitness table whose entries are computed on demand from the counter-based fitness stream of a landscape seed, so
+ * memory does not grow with K. Entry (i, gene) is value i * pow(2,K+1) + gene of the stream, the same value that a
+ * landscape generated from streams holds in its fitness table. Tables correlated with an original table combine the
+ * original entry with their own stream as the correlated Landscape constructor does.
+ * <p>
+ * An optional direct-mapped cache holds recently computed entries. Each cache slot is a single long holding the
+ * entry's tag and float value, so the cache can be shared between threads without locking
+ * @author Sharad Singhal
+ */
+public class VirtualFitnessTable {
+	/** Smallest number of bits in the cache index. Smaller caches cannot hold the tag and value in one long */
+	public static final int MIN_CACHE_BITS = 16;
+	/** Largest number of bits in the cache index */
+	public static final int MAX_CACHE_BITS = 26;
+	/** Handle for atomic access to cache slots */
+	private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+	/** Number of bits in a gene index (K+1) */
+	private final int geneBits;
+	/** Key of the fitness stream */
+	private final long key;
+	/** Table this table is correlated with, or null */
+	private final VirtualFitnessTable orig;
+	/** Correlation coefficient with the original table */
+	private final float rho;
+	/** Weight of the stream value in a correlated table, sqrt(1-rho*rho) */
+	private final float beta;
+	/** Cache slots {(tag+1) &lt;&lt; 32 | float bits}, or null if entries are not cached */
+	private final long cache[];
+	/** Number of bits in the cache index */
+	private final int cacheBits;
+
+	/**
+	 * Create a virtual fitness table
+	 * @param seed - seed of the landscape
+	 * @param K - number of epistatic neighbors of each locus. Must be &lt; 30
+	 * @param cacheBits - log2 of the number of cached entries, 0 for no cache, else in [MIN_CACHE_BITS,MAX_CACHE_BITS]
+	 */
+	VirtualFitnessTable(long seed, int K, int cacheBits) {
+		this(seed, K, cacheBits, null, 1);
+		return;
+	}
+
+	/**
+	 * Create a virtual fitness table correlated with another virtual fitness table
+	 * @param seed - seed of the correlated landscape
+	 * @param K - number of epistatic neighbors of each locus. Must be &lt; 30
+	 * @param cacheBits - log2 of the number of cached entries, 0 for no cache, else in [MIN_CACHE_BITS,MAX_CACHE_BITS]
+	 * @param orig - table to correlate with, or null for an uncorrelated table
+	 * @param rho - correlation coefficient -1 &lt;= rho &lt;= 1
+	 */
+	VirtualFitnessTable(long seed, int K, int cacheBits, VirtualFitnessTable orig, float rho) {
+		if(K + 1 >= Integer.SIZE - 1) throw new RuntimeException("Virtual fitness tables require K < "+(Integer.SIZE - 2)+" found "+K);
+		if(cacheBits != 0 && (cacheBits < MIN_CACHE_BITS || cacheBits > MAX_CACHE_BITS)){
+			throw new RuntimeException("Cache bits must be 0 or "+MIN_CACHE_BITS+" <= bits <= "+MAX_CACHE_BITS+" found "+cacheBits);
+		}
+		geneBits = K + 1;
+		key = Landscape.streamKey(seed, Landscape.FITNESS_STREAM);
+		this.orig = orig;
+		this.rho = rho;
+		beta = (float) Math.sqrt(1.-rho * rho);
+		this.cacheBits = cacheBits;
+		cache = cacheBits != 0 ? new long[1 << cacheBits] : null;
+		return;
+	}
+
+	/**
+	 * Get an entry of the table
+	 * @param i - locus in the genome
+	 * @param gene - gene index [0,pow(2,K+1)) of the locus
+	 * @return - fitness value of the locus
+	 */
+	public float get(int i, int gene) {
+		if(cache == null) return compute(i, gene);
+		// the slot mixes the locus into the gene index, so the low gene bits and the tag identify the entry
+		int slot = (gene ^ (i * 0x9E3779B1)) & ((1 << cacheBits) - 1);
+		long tag = (((long) i << geneBits) | gene) >>> Math.min(cacheBits, geneBits);
+		long entry = (long) SLOTS.getOpaque(cache, slot);
+		if((entry >>> 32) == tag + 1) return Float.intBitsToFloat((int) entry);
+		float value = compute(i, gene);
+		SLOTS.setOpaque(cache, slot, ((tag + 1) << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL));
+		return value;
+	}
+
+	/**
+	 * Compute an entry of the table
+	 * @param i - locus in the genome
+	 * @param gene - gene index of the locus
+	 * @return - fitness value of the locus
+	 */
+	private float compute(int i, int gene) {
+		float r = Landscape.streamFloat(key, ((long) i << geneBits) | gene);
+		return orig == null ? r : rho * orig.get(i, gene) + beta * r;
+	}
+}